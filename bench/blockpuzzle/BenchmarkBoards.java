@@ -0,0 +1,132 @@
+package blockpuzzle;
+
+/**
+ * BenchmarkBoards contains canned Grid states for the benchmarks, so that
+ * results of different commits are measured on exactly the same boards.
+ *
+ * A board is given row by row (y = 0 first), '#' is a non-empty cell
+ * and '.' is an empty cell. The boards must not be changed once results
+ * have been published, add new boards instead.
+ */
+public final class BenchmarkBoards {
+
+    static final String[] EMPTY = {
+            ".........",
+            ".........",
+            ".........",
+            ".........",
+            ".........",
+            ".........",
+            ".........",
+            ".........",
+            ".........",
+    };
+
+    // 12 of 81 cells are non-empty
+    static final String[] SPARSE = {
+            "#........",
+            "...#.....",
+            "......##.",
+            ".#.......",
+            "....#....",
+            "........#",
+            "##.......",
+            ".....#...",
+            "..#....#.",
+    };
+
+    // 43 of 81 cells are non-empty
+    static final String[] HALF = {
+            "##..#.##.",
+            "#.##..#.#",
+            "..####..#",
+            "##...##.#",
+            ".#.##.#..",
+            "#..#.###.",
+            ".##..#..#",
+            "##.#..##.",
+            ".#.##..##",
+    };
+
+    // 63 of 81 cells are non-empty, only small BlockCombos fit
+    static final String[] DENSE = {
+            "###.####.",
+            "##.####.#",
+            "####.##.#",
+            ".###.####",
+            "##.####.#",
+            "#.###.###",
+            "###.##.##",
+            "#######..",
+            ".##.#####",
+    };
+
+    // rows 2 and 6 and column 4 are full
+    static final String[] FULL_LINES = {
+            "#...#..#.",
+            "....#.#..",
+            "#########",
+            ".#..#....",
+            "....#..##",
+            "#...#....",
+            "#########",
+            "..#.#...#",
+            "....#.#..",
+    };
+
+    // the boards of increasing fill level and their names
+    static final String[][] FILL_LEVELS = {EMPTY, SPARSE, HALF, DENSE};
+    static final String[] FILL_LEVEL_NAMES = {"empty", "sparse", "half", "dense"};
+
+    private BenchmarkBoards() {
+    }
+
+    /**
+     * Converts given board to a bitboard as used by the Grid.
+     * Throws IllegalArgumentException if the board is malformed.
+     * @param board the board
+     * @return the bitboard {low, high}
+     */
+    static long[] toBitboard(String[] board) {
+        if (board.length != Grid.SIZE) {
+            throw new IllegalArgumentException("A board must have " + Grid.SIZE + " rows.");
+        }
+
+        long low = 0;
+        long high = 0;
+        for (int y = 0; y < Grid.SIZE; y++) {
+            if (board[y].length() != Grid.SIZE) {
+                throw new IllegalArgumentException("Row " + y + " must have "
+                        + Grid.SIZE + " cells.");
+            }
+            for (int x = 0; x < Grid.SIZE; x++) {
+                char c = board[y].charAt(x);
+                if (c == '#') {
+                    int index = Grid.cellIndex(x, y);
+                    if (index < 64) {
+                        low |= 1L << index;
+                    }
+                    else {
+                        high |= 1L << (index - 64);
+                    }
+                }
+                else if (c != '.') {
+                    throw new IllegalArgumentException("Illegal cell '" + c
+                            + "' at (" + x + ", " + y + ").");
+                }
+            }
+        }
+        return new long[] {low, high};
+    }
+
+    /**
+     * Replaces the state of given Grid with given board.
+     * @param grid the Grid
+     * @param board the board
+     */
+    static void load(Grid grid, String[] board) {
+        long[] bitboard = toBitboard(board);
+        grid.setOccupied(bitboard[0], bitboard[1]);
+    }
+
+}
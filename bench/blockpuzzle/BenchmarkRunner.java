@@ -0,0 +1,128 @@
+package blockpuzzle;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+/**
+ * A BenchmarkRunner measures the average time and the heap allocation
+ * per call of an Operation.
+ *
+ * Each measurement consists of warmup iterations, whose results are dropped,
+ * and measurement iterations of fixed duration. The allocated bytes are read
+ * from the ThreadMXBean of the measuring thread, like the gc profiler of JMH
+ * reports them (gc.alloc.rate.norm).
+ */
+public class BenchmarkRunner {
+    // number of calls between two reads of the clock
+    private static final int batchSize = 256;
+
+    private final int warmupIterations;
+    private final int measurementIterations;
+    private final long iterationNanos;
+
+    // consumes the results of all calls, so the JIT cannot drop the calls
+    private long sink = 0;
+
+    /**
+     * An Operation is the code to be measured. It returns a value that
+     * depends on its work, which is consumed by the BenchmarkRunner.
+     */
+    interface Operation {
+        long run();
+    }
+
+    BenchmarkRunner(int warmupIterations, int measurementIterations, long iterationMillis) {
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+        this.iterationNanos = iterationMillis * 1_000_000;
+    }
+
+    /**
+     * Measures given Operation and prints the result.
+     * @param name the name of the benchmark
+     * @param operation the Operation to be measured
+     */
+    void measure(String name, Operation operation) {
+        for (int i = 0; i < warmupIterations; i++) {
+            runIteration(operation, null);
+        }
+
+        double[] nanosPerOperation = new double[measurementIterations];
+        long operations = 0;
+        long allocatedBytes = 0;
+        for (int i = 0; i < measurementIterations; i++) {
+            long[] counters = new long[2];
+            nanosPerOperation[i] = runIteration(operation, counters);
+            operations += counters[0];
+            allocatedBytes += counters[1];
+        }
+
+        double mean = 0;
+        for (double value : nanosPerOperation) {
+            mean += value;
+        }
+        mean /= measurementIterations;
+        double variance = 0;
+        for (double value : nanosPerOperation) {
+            variance += (value - mean) * (value - mean);
+        }
+        double deviation = measurementIterations > 1
+                ? Math.sqrt(variance / (measurementIterations - 1)) : 0;
+
+        String allocation = allocatedBytes < 0 ? "n/a"
+                : String.format(Locale.ROOT, "%.1f", (double) allocatedBytes / operations);
+        System.out.printf(Locale.ROOT, "%-48s %12.1f +- %8.1f ns/op %10s B/op%n",
+                name, mean, deviation, allocation);
+    }
+
+    /**
+     * Calls given Operation repeatedly for the duration of one iteration.
+     * @param operation the Operation to be measured
+     * @param counters receives the number of calls and the allocated bytes
+     *                 (negative if not supported), may be null
+     * @return the average time per call in nanoseconds
+     */
+    private double runIteration(Operation operation, long[] counters) {
+        long allocatedBefore = getAllocatedBytes();
+        long start = System.nanoTime();
+        long deadline = start + iterationNanos;
+        long operations = 0;
+        long now;
+        do {
+            for (int i = 0; i < batchSize; i++) {
+                sink += operation.run();
+            }
+            operations += batchSize;
+            now = System.nanoTime();
+        } while (now < deadline);
+        long allocatedAfter = getAllocatedBytes();
+
+        if (counters != null) {
+            counters[0] = operations;
+            counters[1] = allocatedBefore < 0 ? -1 : allocatedAfter - allocatedBefore;
+        }
+        return (double) (now - start) / operations;
+    }
+
+    /**
+     * Gets the number of bytes allocated by the current thread so far.
+     * @return the allocated bytes, -1 if the JVM does not support measuring them
+     */
+    private static long getAllocatedBytes() {
+        if (ManagementFactory.getThreadMXBean()
+                instanceof com.sun.management.ThreadMXBean threadBean
+                && threadBean.isThreadAllocatedMemorySupported()) {
+            return threadBean.getCurrentThreadAllocatedBytes();
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the consumed results of all calls.
+     * @return the sink
+     */
+    long getSink() {
+        return sink;
+    }
+
+}
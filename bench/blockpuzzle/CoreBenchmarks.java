@@ -0,0 +1,299 @@
+package blockpuzzle;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+
+/**
+ * CoreBenchmarks measures the hot paths of the game on the canned boards
+ * of BenchmarkBoards.
+ *
+ * Compile and run from the project directory:
+ *   javac -encoding UTF-8 -d out src/blockpuzzle/*.java bench/blockpuzzle/*.java
+ *   java -cp out blockpuzzle.CoreBenchmarks [regex] [--quick] [--no-fork]
+ *
+ * Only benchmarks whose name contains a match of regex are run.
+ * By default every benchmark runs in its own JVM, so the JIT profile of one
+ * benchmark does not influence the next one. --quick shortens all iterations.
+ */
+public class CoreBenchmarks {
+    private static final long seed = 42;
+
+    // benchmark name -> setup of the benchmark's Operation
+    private static final Map<String, Supplier<BenchmarkRunner.Operation>> benchmarks =
+            new LinkedHashMap<>();
+
+    static {
+        for (int i = 0; i < BenchmarkBoards.FILL_LEVELS.length; i++) {
+            String[] board = BenchmarkBoards.FILL_LEVELS[i];
+            String level = BenchmarkBoards.FILL_LEVEL_NAMES[i];
+            benchmarks.put("grid.canInsert.anchor." + level, () -> canInsertAtAnchor(board));
+            benchmarks.put("grid.canInsert.board." + level,
+                    () -> canInsertAnywhere(board, false));
+            benchmarks.put("grid.canInsert.board.withRotation." + level,
+                    () -> canInsertAnywhere(board, true));
+        }
+        benchmarks.put("grid.clearFullRowsAndColumns", CoreBenchmarks::clearFullRowsAndColumns);
+        benchmarks.put("combo.isRotatable", CoreBenchmarks::isRotatable);
+        benchmarks.put("combo.tryRotate", CoreBenchmarks::tryRotate);
+        benchmarks.put("creator.createRandomCombo", CoreBenchmarks::createRandomCombo);
+        for (int i = 0; i < BenchmarkBoards.FILL_LEVELS.length; i++) {
+            String[] board = BenchmarkBoards.FILL_LEVELS[i];
+            String level = BenchmarkBoards.FILL_LEVEL_NAMES[i];
+            benchmarks.put("engine.checkForGameOver." + level, () -> checkForGameOver(board));
+            benchmarks.put("moveGenerator.generateMoves." + level, () -> generateMoves(board));
+        }
+        benchmarks.put("saveManager.save", CoreBenchmarks::save);
+        benchmarks.put("saveManager.load", CoreBenchmarks::load);
+    }
+
+    /**
+     * Checks if a T_5 combo fits at one anchor, the anchor moves over the board.
+     */
+    private static BenchmarkRunner.Operation canInsertAtAnchor(String[] board) {
+        Grid grid = new Grid();
+        BenchmarkBoards.load(grid, board);
+        BlockCombo combo = new BlockCombo(ComboShapeCatalog.SHAPE_T_5);
+        int[] anchor = {0};
+        return () -> {
+            int index = anchor[0];
+            anchor[0] = index == Grid.SIZE * Grid.SIZE - 1 ? 0 : index + 1;
+            GridCell cell = grid.getCellAt(index % Grid.SIZE, index / Grid.SIZE);
+            return grid.canInsertBlockCombo(cell, combo) ? 1 : 0;
+        };
+    }
+
+    /**
+     * Checks if a T_5 combo fits anywhere. One cell of the board is toggled
+     * before each check (and toggled back before the next one),
+     * so every check sees a changed board like after a move.
+     */
+    private static BenchmarkRunner.Operation canInsertAnywhere(String[] board,
+                                                               boolean withRotation) {
+        Grid grid = new Grid();
+        BenchmarkBoards.load(grid, board);
+        BlockCombo combo = new BlockCombo(ComboShapeCatalog.SHAPE_T_5);
+        int[] toggles = {0};
+        return () -> {
+            toggleCell(grid, toggles);
+            return grid.canInsertBlockCombo(combo, withRotation) ? 1 : 0;
+        };
+    }
+
+    /**
+     * Clears two rows and one column of the FULL_LINES board.
+     */
+    private static BenchmarkRunner.Operation clearFullRowsAndColumns() {
+        Grid grid = new Grid();
+        long[] bitboard = BenchmarkBoards.toBitboard(BenchmarkBoards.FULL_LINES);
+        return () -> {
+            grid.setOccupied(bitboard[0], bitboard[1]);
+            grid.clearFullRowsAndColumns();
+            return grid.getLastClearedRows() + grid.getLastClearedColumns();
+        };
+    }
+
+    /**
+     * Asks every ComboShape of the catalog if it is rotatable.
+     */
+    private static BenchmarkRunner.Operation isRotatable() {
+        BlockCombo[] combos = new BlockCombo[ComboShapeCatalog.getNumberOfShapes()];
+        for (int id = 0; id < combos.length; id++) {
+            combos[id] = new BlockCombo(ComboShapeCatalog.getShape(id));
+        }
+        int[] next = {0};
+        return () -> {
+            int id = next[0];
+            next[0] = id == combos.length - 1 ? 0 : id + 1;
+            return combos[id].isRotatable() ? 1 : 0;
+        };
+    }
+
+    /**
+     * Rotates a T_5 combo, which has four distinct rotations.
+     */
+    private static BenchmarkRunner.Operation tryRotate() {
+        BlockCombo combo = new BlockCombo(ComboShapeCatalog.SHAPE_T_5);
+        return () -> {
+            combo.tryRotate();
+            return combo.getCurrentRotation();
+        };
+    }
+
+    /**
+     * Creates random BlockCombos with a seeded generator.
+     */
+    private static BenchmarkRunner.Operation createRandomCombo() {
+        SplittableRandom random = new SplittableRandom(seed);
+        return () -> BlockComboCreator.createRandomCombo(random).getShape().getId();
+    }
+
+    /**
+     * Checks for game over with the three open BlockCombos of a seeded game.
+     * One cell of the board is toggled before each check like in canInsertAnywhere.
+     */
+    private static BenchmarkRunner.Operation checkForGameOver(String[] board) {
+        GameEngine engine = new GameEngine(seed);
+        Grid grid = engine.getGrid();
+        BenchmarkBoards.load(grid, board);
+        int[] toggles = {0};
+        return () -> {
+            toggleCell(grid, toggles);
+            return engine.checkForGameOver() ? 1 : 0;
+        };
+    }
+
+    /**
+     * Lists all legal moves (including rotations) while one cell of the board toggles.
+     */
+    private static BenchmarkRunner.Operation generateMoves(String[] board) {
+        GameEngine engine = new GameEngine(seed);
+        Grid grid = engine.getGrid();
+        BenchmarkBoards.load(grid, board);
+        int[] moves = new int[MoveGenerator.MAXIMUM_MOVES];
+        int[] toggles = {0};
+        return () -> {
+            toggleCell(grid, toggles);
+            return MoveGenerator.generateMoves(engine, moves);
+        };
+    }
+
+    /**
+     * Writes a Savegame of a game on the HALF board.
+     */
+    private static BenchmarkRunner.Operation save() {
+        GameEngine engine = createSavedEngine();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        return () -> {
+            outputStream.reset();
+            try {
+                SaveManager.writeSavegame(new Savegame(engine), outputStream);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return outputStream.size();
+        };
+    }
+
+    /**
+     * Reads a Savegame of a game on the HALF board and restores it.
+     */
+    private static BenchmarkRunner.Operation load() {
+        GameEngine engine = createSavedEngine();
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        try {
+            SaveManager.writeSavegame(new Savegame(engine), outputStream);
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        byte[] bytes = outputStream.toByteArray();
+        return () -> {
+            try {
+                engine.restore(SaveManager.readSavegame(new ByteArrayInputStream(bytes)));
+            }
+            catch (IOException | ClassNotFoundException e) {
+                throw new IllegalStateException("Savegame cannot be read.", e);
+            }
+            return engine.getScore();
+        };
+    }
+
+    /**
+     * Creates a seeded game on the HALF board that has a saved BlockCombo.
+     * @return the GameEngine
+     */
+    private static GameEngine createSavedEngine() {
+        GameEngine engine = new GameEngine(seed);
+        BenchmarkBoards.load(engine.getGrid(), BenchmarkBoards.HALF);
+        engine.save(0);
+        return engine;
+    }
+
+    /**
+     * Toggles one cell of the Grid. Two successive calls toggle the same cell,
+     * so the board returns to its original state after every second call.
+     * @param grid the Grid
+     * @param toggles the number of calls so far, it is increased by one
+     */
+    private static void toggleCell(Grid grid, int[] toggles) {
+        int index = (toggles[0] >> 1) % (Grid.SIZE * Grid.SIZE);
+        toggles[0] = (toggles[0] + 1) & Integer.MAX_VALUE;
+        if (index < 64) {
+            grid.setOccupied(grid.getOccupiedLow() ^ (1L << index), grid.getOccupiedHigh());
+        }
+        else {
+            grid.setOccupied(grid.getOccupiedLow(),
+                    grid.getOccupiedHigh() ^ (1L << (index - 64)));
+        }
+    }
+
+    /**
+     * Runs the benchmarks.
+     * Arguments: [regex] [--quick] [--no-fork]
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Pattern filter = null;
+        boolean quick = false;
+        boolean fork = true;
+        for (String arg : args) {
+            switch (arg) {
+                case "--quick" -> quick = true;
+                case "--no-fork" -> fork = false;
+                default -> filter = Pattern.compile(arg);
+            }
+        }
+
+        List<String> selected = new ArrayList<>();
+        for (String name : benchmarks.keySet()) {
+            if (filter == null || filter.matcher(name).find()) {
+                selected.add(name);
+            }
+        }
+
+        BenchmarkRunner runner = quick ? new BenchmarkRunner(1, 3, 200)
+                : new BenchmarkRunner(5, 5, 1000);
+        for (String name : selected) {
+            if (fork) {
+                runForked(name, quick);
+            }
+            else {
+                runner.measure(name, benchmarks.get(name).get());
+            }
+        }
+    }
+
+    /**
+     * Runs a single benchmark in a new JVM with the same class path.
+     * @param name the name of the benchmark
+     * @param quick specifies if iterations are shortened
+     */
+    private static void runForked(String name, boolean quick)
+            throws IOException, InterruptedException {
+        String java = System.getProperty("java.home") + File.separator + "bin"
+                + File.separator + "java";
+        List<String> command = new ArrayList<>(List.of(java, "-cp",
+                System.getProperty("java.class.path"), CoreBenchmarks.class.getName(),
+                "^" + Pattern.quote(name) + "$", "--no-fork"));
+        if (quick) {
+            command.add("--quick");
+        }
+
+        Process process = new ProcessBuilder(command).inheritIO().start();
+        if (process.waitFor() != 0) {
+            System.err.println("Benchmark " + name + " failed.");
+        }
+    }
+
+}
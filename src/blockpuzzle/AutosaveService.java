@@ -0,0 +1,79 @@
+package blockpuzzle;
+
+import javax.swing.*;
+
+/**
+ * An AutosaveService saves the game in the background while it is played.
+ * As every save compacts the SaveManager's journal, the journal never grows
+ * beyond the moves of one interval.
+ *
+ * The game is marked dirty by every change of its state (see
+ * GameEngine.setChangeListener()). The first change after a save starts a
+ * timer; when it fires, the game is saved once for all changes made in the
+ * meantime. So the game is saved at most once per interval and nothing is
+ * written while the player is idle.
+ *
+ * The timer fires on the EDT, where the Savegame is only snapshotted;
+ * the SaveManager writes it on its own thread.
+ */
+public class AutosaveService {
+    // default interval between two autosaves in milliseconds
+    static final int DEFAULT_INTERVAL_MILLIS = 30000;
+
+    private final SaveManager saveManager;
+    private final Timer timer;
+    private boolean dirty = false;
+
+    /**
+     * Creates an AutosaveService.
+     * @param saveManager the SaveManager saving the game
+     * @param intervalMillis the minimum time between two autosaves in milliseconds
+     */
+    AutosaveService(SaveManager saveManager, int intervalMillis) {
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("The autosave interval must be positive.");
+        }
+        this.saveManager = saveManager;
+        timer = new Timer(intervalMillis, e -> saveIfDirty());
+        timer.setRepeats(false);
+    }
+
+    /**
+     * Marks the game as changed since the last save. The game is saved when
+     * the current interval is over. Must be called on the EDT.
+     */
+    void markDirty() {
+        dirty = true;
+        if (!timer.isRunning()) {
+            timer.start();
+        }
+    }
+
+    /**
+     * Marks the game as saved, e.g. because it has been saved otherwise.
+     * A pending autosave is cancelled. Must be called on the EDT.
+     */
+    void markClean() {
+        dirty = false;
+        timer.stop();
+    }
+
+    /**
+     * Checks if the game has changed since the last save.
+     * @return true if the game is dirty, false otherwise
+     */
+    boolean isDirty() {
+        return dirty;
+    }
+
+    /**
+     * Saves the game if it has changed since the last save.
+     */
+    private void saveIfDirty() {
+        if (dirty) {
+            dirty = false;
+            saveManager.saveGameState();
+        }
+    }
+
+}
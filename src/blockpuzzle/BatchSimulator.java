@@ -0,0 +1,176 @@
+package blockpuzzle;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Supplier;
+
+/**
+ * A BatchSimulator plays many complete games headless with a MovePolicy
+ * and reports throughput and score distribution.
+ *
+ * The games are spread across a ForkJoinPool. Each task owns its GameEngine,
+ * its MovePolicy and its random number generators, so tasks share no mutable
+ * state. The games are played with the same GameEngine rules as the shipped game.
+ *
+ * Game i is seeded with a seed derived from the simulation's seed and i,
+ * so every game of a simulation can be reproduced.
+ */
+public class BatchSimulator {
+    // number of games a task plays itself instead of splitting them
+    private static final int gamesPerTask = 64;
+    // a game is aborted after this number of moves
+    private static final int maximumMovesPerGame = 1_000_000;
+
+    private final Supplier<MovePolicy> policyFactory;
+    private final int parallelism;
+
+    BatchSimulator(Supplier<MovePolicy> policyFactory, int parallelism) {
+        this.policyFactory = policyFactory;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Plays the given number of games.
+     * The BlockCombos and the policy's random decisions of game i
+     * only depend on seed and i.
+     * @param numberOfGames the number of games to be played
+     * @param seed the seed of the simulation
+     * @return the SimulationReport of all games
+     */
+    SimulationReport run(int numberOfGames, long seed) {
+        ForkJoinPool pool = new ForkJoinPool(parallelism);
+        try {
+            long start = System.nanoTime();
+            GameBatch batch = pool.invoke(
+                    new GameBatchTask(policyFactory, 0, numberOfGames, seed));
+            long elapsedNanos = System.nanoTime() - start;
+            return new SimulationReport(batch.scores, batch.moves, elapsedNanos);
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Plays one game until it is over (or no move can be made).
+     * @param engine the GameEngine to play with, it is restarted before playing
+     * @param gameSeed the seed for the BlockCombos of the game
+     * @param policy the MovePolicy deciding the moves
+     * @param random the random number generator for the policy
+     * @return the number of moves made
+     */
+    static int playGame(GameEngine engine, long gameSeed, MovePolicy policy,
+                        SplittableRandom random) {
+        engine.restart(gameSeed);
+
+        int moves = 0;
+        while (!engine.isGameOver() && moves < maximumMovesPerGame) {
+            if (!policy.makeMove(engine, random)) {
+                break;
+            }
+            moves += 1;
+        }
+        return moves;
+    }
+
+    /**
+     * The result of a range of games: their final scores and number of moves.
+     */
+    private static class GameBatch {
+        private final int[] scores;
+        private long moves = 0;
+
+        GameBatch(int numberOfGames) {
+            scores = new int[numberOfGames];
+        }
+    }
+
+    /**
+     * A GameBatchTask plays the games from (inclusive) to (exclusive).
+     * Large ranges are split in halves which are played in parallel.
+     */
+    private static class GameBatchTask extends RecursiveTask<GameBatch> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient Supplier<MovePolicy> policyFactory;
+        private final int from;
+        private final int to;
+        private final long seed;
+
+        GameBatchTask(Supplier<MovePolicy> policyFactory, int from, int to, long seed) {
+            this.policyFactory = policyFactory;
+            this.from = from;
+            this.to = to;
+            this.seed = seed;
+        }
+
+        @Override
+        protected GameBatch compute() {
+            if (to - from <= gamesPerTask) {
+                return playGames();
+            }
+
+            // split range and play both halves in parallel
+            int middle = (from + to) >>> 1;
+            GameBatchTask left = new GameBatchTask(policyFactory, from, middle, seed);
+            GameBatchTask right = new GameBatchTask(policyFactory, middle, to, seed);
+            left.fork();
+            GameBatch rightBatch = right.compute();
+            GameBatch leftBatch = left.join();
+
+            // merge both halves
+            GameBatch batch = new GameBatch(to - from);
+            System.arraycopy(leftBatch.scores, 0, batch.scores, 0, middle - from);
+            System.arraycopy(rightBatch.scores, 0, batch.scores, middle - from, to - middle);
+            batch.moves = leftBatch.moves + rightBatch.moves;
+            return batch;
+        }
+
+        /**
+         * Plays all games of this task's range one after another.
+         * @return the GameBatch of the range
+         */
+        private GameBatch playGames() {
+            GameBatch batch = new GameBatch(to - from);
+            GameEngine engine = new GameEngine(seed);
+            MovePolicy policy = policyFactory.get();
+
+            for (int game = from; game < to; game++) {
+                SplittableRandom random = new SplittableRandom(
+                        seed ^ game * 0x9E3779B97F4A7C15L);
+                long gameSeed = random.nextLong();
+                batch.moves += playGame(engine, gameSeed, policy, random);
+                batch.scores[game - from] = engine.getScore();
+            }
+            return batch;
+        }
+    }
+
+    /**
+     * Runs a batch simulation from the command line.
+     * Arguments: [games] [policy: random|greedy] [threads] [seed]
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 10_000;
+        String policyName = args.length > 1 ? args[1] : "greedy";
+        int threads = args.length > 2 ? Integer.parseInt(args[2])
+                : Runtime.getRuntime().availableProcessors();
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : System.nanoTime();
+
+        Supplier<MovePolicy> policyFactory = switch (policyName) {
+            case "random" -> RandomMovePolicy::new;
+            case "greedy" -> GreedyMovePolicy::new;
+            default -> throw new IllegalArgumentException(
+                    "Unknown policy: " + policyName + " (use random or greedy)");
+        };
+
+        BatchSimulator simulator = new BatchSimulator(policyFactory, threads);
+        SimulationReport report = simulator.run(games, seed);
+        System.out.println("policy: " + policyName + ", threads: " + threads
+                + ", seed: " + seed);
+        System.out.println(report);
+    }
+
+}
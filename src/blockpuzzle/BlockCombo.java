@@ -1,34 +1,98 @@
 package blockpuzzle;
 
-import java.util.ArrayList;
-import java.util.Arrays;
 import java.util.List;
-import java.util.Random;
+import java.util.random.RandomGenerator;
 
 /**
  * A BlockCombo describes a set of blocks with a particular formation and
  * represents a game object that can be inserted into a grid.
+ *
+ * The formation is not stored by the BlockCombo itself. A BlockCombo only
+ * refers to an immutable ComboShape of the ComboShapeCatalog plus the index of
+ * the shape's rotation that is currently used, so rotating allocates nothing.
  */
 public class BlockCombo {
 
-    /** each comboFormation.get(i) = [i_x, i_y] represents one block
-     * [i_x, i_y] is the block's distance to the start block
-     * each comboFormation has a start block, this start block is
+    /** each formation of the shape = list of [i_x, i_y] where each entry represents
+     * one block, [i_x, i_y] is the block's distance to the start block
+     * each formation has a start block, this start block is
      * represented by the entry [i_x, i_y] = [0, 0]
      */
-    private final List<int[]> comboFormation;
-    private int rotation = 0;
+    private final ComboShape shape;
 
+    // the shape's rotation that is the original formation of this BlockCombo
+    private int originalRotation = 0;
+    // number of rotations applied to the original formation, always
+    // smaller than the shape's symmetry order
+    private int rotationSteps = 0;
+
+    BlockCombo(ComboShape comboShape) {
+        shape = comboShape;
+    }
+
+    /**
+     * Creates a BlockCombo whose original formation is the given rotation of the ComboShape.
+     * @param comboShape the ComboShape
+     * @param rotation the rotation of the original formation (0..3)
+     */
+    BlockCombo(ComboShape comboShape, int rotation) {
+        shape = comboShape;
+        originalRotation = rotation;
+    }
+
+    /**
+     * Creates a BlockCombo with the given formation as original formation.
+     * Throws IllegalArgumentException if the formation does not belong
+     * to any ComboShape of the ComboShapeCatalog.
+     * @param formation the formation of the BlockCombo
+     */
     BlockCombo(List<int[]> formation) {
-        comboFormation = formation;
+        shape = ComboShapeCatalog.findShape(formation);
+        originalRotation = shape.findRotation(formation);
+    }
+
+    /**
+     * Gets the ComboShape of the BlockCombo.
+     * @return the shape
+     */
+    ComboShape getShape() {
+        return shape;
+    }
+
+    /**
+     * Gets the index of the shape's rotation that is the original formation.
+     * @return the original rotation (0..3)
+     */
+    int getOriginalRotation() {
+        return originalRotation;
+    }
+
+    /**
+     * Gets the index of the shape's rotation that is the current formation.
+     * @return the current rotation (0..3)
+     */
+    int getCurrentRotation() {
+        return getReachableRotation(0);
+    }
+
+    /**
+     * Gets the index of the shape's rotation that is reached by rotating
+     * this BlockCombo the given number of times.
+     * @param steps the number of rotations by 90° to the right (may be negative)
+     * @return the reached rotation (0..3)
+     */
+    int getReachableRotation(int steps) {
+        int reachedSteps = Math.floorMod(rotationSteps + steps, shape.getSymmetryOrder());
+        return (originalRotation + reachedSteps) % ComboShape.NUMBER_OF_ROTATIONS;
     }
 
     /**
      * Gets the formation of the BlockCombo.
+     * The returned list and its blocks must not be modified.
      * @return the comboFormation
      */
     List<int[]> getComboFormation() {
-        return comboFormation;
+        return shape.getFormation(getCurrentRotation());
     }
 
     /**
@@ -36,13 +100,9 @@ public class BlockCombo {
      * @return the new BlockCombo
      */
     BlockCombo createCopy() {
-        List<int[]> formationCopy = new ArrayList<>();
-        for (int[] block : comboFormation) {
-            int[] blockCopy = {block[0], block[1]};
-            formationCopy.add(blockCopy);
-        }
-        BlockCombo comboCopy = new BlockCombo(formationCopy);
-        comboCopy.rotation = rotation;  // copy rotation state
+        BlockCombo comboCopy = new BlockCombo(shape);
+        comboCopy.originalRotation = originalRotation;
+        comboCopy.rotationSteps = rotationSteps;  // copy rotation state
         return comboCopy;
     }
 
@@ -50,7 +110,7 @@ public class BlockCombo {
      * Prints a string representation of the comboFormation to the standard output.
      */
     void printFormation() {
-        for (int[] block : comboFormation) {
+        for (int[] block : getComboFormation()) {
             System.out.print(block[0] + "|" + block[1] + "  ");
         }
         System.out.println();
@@ -59,32 +119,14 @@ public class BlockCombo {
     /**
      * Checks if this BlockCombo is equivalent to the other given BlockCombos.
      * Two BlockCombos are equivalent if and only if the comboFormations of both
-     * BlockCombos contain the same elements (not considering the elements' order).
+     * BlockCombos contain the same elements (not considering the elements' order),
+     * i.e. if the canonical formation keys of both BlockCombos are equal.
      * @param other the BlockCombo to be compared
      * @return true if the BlockCombos are equivalent, false otherwise
      */
     boolean equivalent(BlockCombo other) {
-        if (comboFormation.size() != other.getComboFormation().size()) {
-            return false;
-        }
-
-        // check if each block in this.comboFormation has its
-        // equivalent otherBlock in other.comboFormation
-        for (int[] block : comboFormation) {
-            boolean blockFound = false;
-            for (int[] otherBlock : other.getComboFormation()) {
-                if (Arrays.equals(block, otherBlock)) {
-                    blockFound = true;
-                    break;
-                }
-            }
-            if (!blockFound) {
-                // this has a block that other has not
-                return false;
-            }
-        }
-
-        return true;
+        return shape.getFormationKey(getCurrentRotation())
+                == other.shape.getFormationKey(other.getCurrentRotation());
     }
 
     /**
@@ -93,41 +135,32 @@ public class BlockCombo {
      * @return true if BlockCombo can be rotated
      */
     boolean isRotatable() {
-        // simulate rotation for this BlockCombo
-        BlockCombo rotatedCombo = createCopy();
-        rotatedCombo.rotate();
-
-        // find block b of rotatedCombo so that if b is start block of rotatedCombo:
-        // rotatedComboWithBStartBlock.equivalent(this) == true
-
-        for (int i = 0; i < comboFormation.size(); i++) {
-            int[] b = rotatedCombo.getComboFormation().get(i);
-            // get adjusted formation with b as start block
-            List<int[]> formationBStartBlock = new ArrayList<>();
-            for (int j = 0; j < comboFormation.size(); j++) {
-                int[] adjustedBlock = {rotatedCombo.getComboFormation().get(j)[0] -b[0],
-                                       rotatedCombo.getComboFormation().get(j)[1] -b[1]};
-                formationBStartBlock.add(adjustedBlock);
-            }
-
-            BlockCombo rotatedComboWithBStartBlock =
-                    new BlockCombo(formationBStartBlock);
-
-            if (rotatedComboWithBStartBlock.equivalent(this)) {
-                // rotatedCombo is equivalent to non-rotated combo
-                return false;
-            }
-        }
+        return shape.getSymmetryOrder() > 1;
+    }
+
+    /**
+     * Gets the number of rotations applied to the original formation.
+     * @return the rotationSteps (0 .. symmetry order - 1)
+     */
+    int getRotationSteps() {
+        return rotationSteps;
+    }
 
-        return true;
+    /**
+     * Rotates the BlockCombo so that its original formation is rotated
+     * the given number of times. Does nothing if BlockCombo is not rotatable.
+     * @param steps the number of rotations by 90° to the right
+     */
+    void setRotationSteps(int steps) {
+        rotationSteps = Math.floorMod(steps, shape.getSymmetryOrder());
     }
 
     /**
      * Checks if this BlockCombo is rotated or in its original orientation.
-     * @return true if rotation != 0, false otherwise
+     * @return true if rotationSteps != 0, false otherwise
      */
     boolean isRotated() {
-        return rotation != 0;
+        return rotationSteps != 0;
     }
 
     /**
@@ -145,21 +178,10 @@ public class BlockCombo {
 
     /**
      * Rotates the BlockCombo 90° to the right.
+     * After symmetryOrder rotations the BlockCombo is back in its original formation.
      */
     private void rotate() {
-        // calculate for all blocks in formation the new distance to start block
-        for (int i = 0; i < comboFormation.size(); i++) {
-            int[] newDistance = {-comboFormation.get(i)[1],
-                    comboFormation.get(i)[0]};
-            comboFormation.set(i, newDistance);
-        }
-
-        // set new rotation
-        rotation += 90;
-        if (rotation == 360) {
-            // BlockCombo is back in original formation
-            rotation = 0;
-        }
+        rotationSteps = (rotationSteps + 1) % shape.getSymmetryOrder();
     }
 
     /**
@@ -169,66 +191,38 @@ public class BlockCombo {
      * 25% 180° rotation
      * 25% 270° rotation
      * The new formation becomes the original formation for this BlockCombo,
-     * so rotation is set to 0 and the BlockCombo is considered as non-rotated.
+     * so the BlockCombo is considered as non-rotated afterwards.
+     * @param r the random number generator to be used
      */
-    void rotateRandomly() {
+    void rotateRandomly(RandomGenerator r) {
         if (!isRotatable()) {
             return;
         }
 
-        Random r = new Random();
         int numberOfRotations = r.nextInt(4);
 
-        // rotate
-        for (int i = 0; i < numberOfRotations; i++) {
-            rotate();
-        }
-
-        // this formation becomes original formation
-        rotation = 0;
+        // rotate and let this formation become original formation
+        originalRotation = (originalRotation + numberOfRotations)
+                % ComboShape.NUMBER_OF_ROTATIONS;
+        rotationSteps = 0;
     }
 
     /**
      * Rotates the BlockCombo back in its original formation.
      */
     void resetRotation() {
-        // rotate as long as original formation is not restored yet
-        while (rotation != 0) {
-            rotate();
-        }
+        rotationSteps = 0;
     }
 
     /**
      * Gets the offset (in blocks) for drawing this BlockCombo into BlockCombosPanel.
      * offset [off_x, off_y] means that the BlockCombo must be shifted off_x blocks
      * in x-direction and off_y blocks in y-direction.
-     * @return the calculated offset
+     * The offset is precomputed by the ComboShape and must not be modified.
+     * @return the offset
      */
     double[] getDrawOffset() {
-        int blocksLeftOfStartBlock = 0;
-        int blocksRightOfStartBlock = 0;
-        int blocksAboveStartBlock = 0;
-        int blocksUnderStartBlock = 0;
-
-        for (int[] block : comboFormation) {
-            if (block[0] > 0 && block[0] > blocksRightOfStartBlock) {
-                blocksRightOfStartBlock += 1;
-            }
-            else if (block[0] < 0 && block[0] < blocksLeftOfStartBlock) {
-                blocksLeftOfStartBlock -= 1;
-            }
-            if (block[1] > 0 && block[1] > blocksUnderStartBlock) {
-                blocksUnderStartBlock += 1;
-            }
-            else if (block[1] < 0 && block[1] < blocksAboveStartBlock) {
-                blocksAboveStartBlock -= 1;
-            }
-        }
-
-        return new double[] {
-                (double)(blocksLeftOfStartBlock + blocksRightOfStartBlock) / -2,
-                (double)(blocksAboveStartBlock + blocksUnderStartBlock) / -2
-        };
+        return shape.getDrawOffset(getCurrentRotation());
     }
 
 
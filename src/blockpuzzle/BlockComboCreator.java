@@ -1,12 +1,11 @@
 package blockpuzzle;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Random;
+import java.util.random.RandomGenerator;
 
 /**
  * The BlockComboCreator class provides static
  * methods to create all legal BlockCombos.
+ * The formations of the BlockCombos are defined by the ComboShapeCatalog.
  *
  * The size AxB_C of a BlockCombo states that the BlockCombo
  * has A blocks in x-direction and B blocks in y-direction
@@ -16,21 +15,22 @@ public class BlockComboCreator {
 
     /**
      * Creates randomly a BlockCombo that can be randomly rotated.
+     * The same sequence of random numbers always results in the same BlockCombo.
+     * @param r the random number generator to be used
      * @return the created BlockCombo
      */
-    static BlockCombo createRandomCombo() {
-        BlockCombo combo = createNonRotatedRandomCombo();
-        combo.rotateRandomly();
+    static BlockCombo createRandomCombo(RandomGenerator r) {
+        BlockCombo combo = createNonRotatedRandomCombo(r);
+        combo.rotateRandomly(r);
         return combo;
     }
 
     /**
      * Creates randomly a BlockCombo using the create_..._Combo() methods of this class.
+     * @param r the random number generator to be used
      * @return the created BlockCombo
      */
-    private static BlockCombo createNonRotatedRandomCombo() {
-        Random r = new Random();
-
+    private static BlockCombo createNonRotatedRandomCombo(RandomGenerator r) {
         return switch (r.nextInt(14)) {
             case 0 -> create_1x1_1_Combo();
             case 1 -> create_1x2_2_Combo();
@@ -61,12 +61,7 @@ public class BlockComboCreator {
      * @return the created BlockCombo
      */
     static BlockCombo create_1x1_1_Combo() {
-        int[] block0 = {0, 0};
-
-        List<int[]> comboFormation = new ArrayList<>();
-        comboFormation.add(block0);
-
-        return new BlockCombo(comboFormation);
+        return new BlockCombo(ComboShapeCatalog.SHAPE_1x1_1);
     }
 
     /**
@@ -74,119 +69,35 @@ public class BlockComboCreator {
      * @return the created BlockCombo
      */
     static BlockCombo create_1x2_2_Combo() {
-        int[] block0 = {0, 0};
-        int[] block1 = {0, 1};
-
-        List<int[]> comboFormation = new ArrayList<>();
-        comboFormation.add(block0);
-        comboFormation.add(block1);
-
-        return new BlockCombo(comboFormation);
+        return new BlockCombo(ComboShapeCatalog.SHAPE_1x2_2);
     }
 
     static BlockCombo create_1x3_3_Combo() {
-        int[] block0 = {0, 0};
-        int[] block1 = {0, 1};
-        int[] block2 = {0, 2};
-
-        List<int[]> comboFormation = new ArrayList<>();
-        comboFormation.add(block0);
-        comboFormation.add(block1);
-        comboFormation.add(block2);
-
-        return new BlockCombo(comboFormation);
+        return new BlockCombo(ComboShapeCatalog.SHAPE_1x3_3);
     }
 
     static BlockCombo create_1x4_4_Combo() {
-        int[] block0 = {0, 0};
-        int[] block1 = {0, 1};
-        int[] block2 = {0, 2};
-        int[] block3 = {0, 3};
-
-        List<int[]> comboFormation = new ArrayList<>();
-        comboFormation.add(block0);
-        comboFormation.add(block1);
-        comboFormation.add(block2);
-        comboFormation.add(block3);
-
-        return new BlockCombo(comboFormation);
+        return new BlockCombo(ComboShapeCatalog.SHAPE_1x4_4);
     }
 
     static BlockCombo create_1x5_5_Combo() {
-        int[] block0 = {0, 0};
-        int[] block1 = {0, 1};
-        int[] block2 = {0, 2};
-        int[] block3 = {0, 3};
-        int[] block4 = {0, 4};
-
-        List<int[]> comboFormation = new ArrayList<>();
-        comboFormation.add(block0);
-        comboFormation.add(block1);
-        comboFormation.add(block2);
-        comboFormation.add(block3);
-        comboFormation.add(block4);
-
-        return new BlockCombo(comboFormation);
+        return new BlockCombo(ComboShapeCatalog.SHAPE_1x5_5);
     }
 
     static BlockCombo create_2x2_3_Combo() {
-        int[] block0 = {0, 0};
-        int[] block1 = {1, 0};
-        int[] block2 = {0, 1};
-
-        List<int[]> comboFormation = new ArrayList<>();
-        comboFormation.add(block0);
-        comboFormation.add(block1);
-        comboFormation.add(block2);
-
-        return new BlockCombo(comboFormation);
+        return new BlockCombo(ComboShapeCatalog.SHAPE_2x2_3);
     }
 
     static BlockCombo create_2x2_4_Combo() {
-        int[] block0 = {0, 0};
-        int[] block1 = {1, 0};
-        int[] block2 = {0, 1};
-        int[] block3 = {1, 1};
-
-        List<int[]> comboFormation = new ArrayList<>();
-        comboFormation.add(block0);
-        comboFormation.add(block1);
-        comboFormation.add(block2);
-        comboFormation.add(block3);
-
-        return new BlockCombo(comboFormation);
+        return new BlockCombo(ComboShapeCatalog.SHAPE_2x2_4);
     }
 
     static BlockCombo create_2x3_4_Combo() {
-        int[] block0 = {0, 0};
-        int[] block1 = {1, 0};
-        int[] block2 = {0, 1};
-        int[] block3 = {0, 2};
-
-        List<int[]> comboFormation = new ArrayList<>();
-        comboFormation.add(block0);
-        comboFormation.add(block1);
-        comboFormation.add(block2);
-        comboFormation.add(block3);
-
-        return new BlockCombo(comboFormation);
+        return new BlockCombo(ComboShapeCatalog.SHAPE_2x3_4);
     }
 
     static BlockCombo create_3x3_5_Combo() {
-        int[] block0 = {0, 0};
-        int[] block1 = {1, 0};
-        int[] block2 = {2, 0};
-        int[] block3 = {0, 1};
-        int[] block4 = {0, 2};
-
-        List<int[]> comboFormation = new ArrayList<>();
-        comboFormation.add(block0);
-        comboFormation.add(block1);
-        comboFormation.add(block2);
-        comboFormation.add(block3);
-        comboFormation.add(block4);
-
-        return new BlockCombo(comboFormation);
+        return new BlockCombo(ComboShapeCatalog.SHAPE_3x3_5);
     }
 
     /**
@@ -194,14 +105,7 @@ public class BlockComboCreator {
      * @return the created BlockCombo
      */
     static BlockCombo create_diagonal_2_Combo() {
-        int[] block0 = {0, 0};
-        int[] block1 = {1, 1};
-
-        List<int[]> comboFormation = new ArrayList<>();
-        comboFormation.add(block0);
-        comboFormation.add(block1);
-
-        return new BlockCombo(comboFormation);
+        return new BlockCombo(ComboShapeCatalog.SHAPE_DIAGONAL_2);
     }
 
     /**
@@ -209,16 +113,7 @@ public class BlockComboCreator {
      * @return the created BlockCombo
      */
     static BlockCombo create_diagonal_3_Combo() {
-        int[] block0 = {0, 0};
-        int[] block1 = {1, 1};
-        int[] block2 = {2, 2};
-
-        List<int[]> comboFormation = new ArrayList<>();
-        comboFormation.add(block0);
-        comboFormation.add(block1);
-        comboFormation.add(block2);
-
-        return new BlockCombo(comboFormation);
+        return new BlockCombo(ComboShapeCatalog.SHAPE_DIAGONAL_3);
     }
 
     /**
@@ -226,18 +121,7 @@ public class BlockComboCreator {
      * @return the created BlockCombo
      */
     static BlockCombo create_diagonal_4_Combo() {
-        int[] block0 = {0, 0};
-        int[] block1 = {1, 1};
-        int[] block2 = {2, 2};
-        int[] block3 = {3, 3};
-
-        List<int[]> comboFormation = new ArrayList<>();
-        comboFormation.add(block0);
-        comboFormation.add(block1);
-        comboFormation.add(block2);
-        comboFormation.add(block3);
-
-        return new BlockCombo(comboFormation);
+        return new BlockCombo(ComboShapeCatalog.SHAPE_DIAGONAL_4);
     }
 
     /**
@@ -245,18 +129,7 @@ public class BlockComboCreator {
      * @return the created BlockCombo
      */
     static BlockCombo create_T_4_Combo() {
-        int[] block0 = {0, 0};
-        int[] block1 = {1, 0};
-        int[] block2 = {-1, 0};
-        int[] block3 = {0, 1};
-
-        List<int[]> comboFormation = new ArrayList<>();
-        comboFormation.add(block0);
-        comboFormation.add(block1);
-        comboFormation.add(block2);
-        comboFormation.add(block3);
-
-        return new BlockCombo(comboFormation);
+        return new BlockCombo(ComboShapeCatalog.SHAPE_T_4);
     }
 
     /**
@@ -264,20 +137,7 @@ public class BlockComboCreator {
      * @return the created BlockCombo
      */
     static BlockCombo create_T_5_Combo() {
-        int[] block0 = {0, 0};
-        int[] block1 = {1, 0};
-        int[] block2 = {-1, 0};
-        int[] block3 = {0, 1};
-        int[] block4 = {0, 2};
-
-        List<int[]> comboFormation = new ArrayList<>();
-        comboFormation.add(block0);
-        comboFormation.add(block1);
-        comboFormation.add(block2);
-        comboFormation.add(block3);
-        comboFormation.add(block4);
-
-        return new BlockCombo(comboFormation);
+        return new BlockCombo(ComboShapeCatalog.SHAPE_T_5);
     }
 
     /**
@@ -285,20 +145,7 @@ public class BlockComboCreator {
      * @return the created BlockCombo
      */
     static BlockCombo create_Plus_5_Combo() {
-        int[] block0 = {0, 0};
-        int[] block1 = {0, -1};
-        int[] block2 = {0, 1};
-        int[] block3 = {-1, 0};
-        int[] block4 = {1, 0};
-
-        List<int[]> comboFormation = new ArrayList<>();
-        comboFormation.add(block0);
-        comboFormation.add(block1);
-        comboFormation.add(block2);
-        comboFormation.add(block3);
-        comboFormation.add(block4);
-
-        return new BlockCombo(comboFormation);
+        return new BlockCombo(ComboShapeCatalog.SHAPE_PLUS_5);
     }
 
     /**
@@ -306,20 +153,7 @@ public class BlockComboCreator {
      * @return the created BlockCombo
      */
     static BlockCombo create_X_5_Combo() {
-        int[] block0 = {0, 0};
-        int[] block1 = {-1, -1};
-        int[] block2 = {1, -1};
-        int[] block3 = {-1, 1};
-        int[] block4 = {1, 1};
-
-        List<int[]> comboFormation = new ArrayList<>();
-        comboFormation.add(block0);
-        comboFormation.add(block1);
-        comboFormation.add(block2);
-        comboFormation.add(block3);
-        comboFormation.add(block4);
-
-        return new BlockCombo(comboFormation);
+        return new BlockCombo(ComboShapeCatalog.SHAPE_X_5);
     }
 
     /**
@@ -327,18 +161,7 @@ public class BlockComboCreator {
      * @return the created BlockCombo
      */
     static BlockCombo create_Circle_4_Combo() {
-        int[] block0 = {0, 0};
-        int[] block1 = {-1, 1};
-        int[] block2 = {1, 1};
-        int[] block3 = {0, 2};
-
-        List<int[]> comboFormation = new ArrayList<>();
-        comboFormation.add(block0);
-        comboFormation.add(block1);
-        comboFormation.add(block2);
-        comboFormation.add(block3);
-
-        return new BlockCombo(comboFormation);
+        return new BlockCombo(ComboShapeCatalog.SHAPE_CIRCLE_4);
     }
 
 }
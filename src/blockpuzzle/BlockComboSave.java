@@ -15,17 +15,17 @@ public class BlockComboSave implements Serializable {
 
     private final List<int[]> comboFormation;
 
-
-    BlockComboSave(SingleContainer<BlockCombo> comboContainer) {
-        if (comboContainer.isEmpty()) {
-            // no BlockCombo in this SingleContainer
+    /**
+     * Creates a BlockComboSave of given BlockCombo in its original formation.
+     * @param combo the BlockCombo, null for an empty SingleContainer
+     */
+    BlockComboSave(BlockCombo combo) {
+        if (combo == null) {
             comboFormation = new ArrayList<>();
         }
         else {
-            // save the formation of the non-rotated BlockCombo
-            BlockCombo combo = comboContainer.getContent();
-            combo.resetRotation();
-            comboFormation = combo.getComboFormation();
+            comboFormation = new ArrayList<>(
+                    combo.getShape().getFormation(combo.getOriginalRotation()));
         }
     }
 
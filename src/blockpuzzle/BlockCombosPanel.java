@@ -3,18 +3,32 @@ package blockpuzzle;
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.MouseEvent;
-import java.util.ArrayList;
-import java.util.List;
+import java.awt.image.BufferedImage;
 
 /**
- * A BlockCombosPanel is an extended JPanel that contains the logical and visual
- * representation of the (not yet inserted) BlockCombos in the game.
+ * A BlockCombosPanel is an extended JPanel that contains the visual representation
+ * of the (not yet inserted) BlockCombos of the GameEngine and the player's selection.
+ *
+ * The area of each BlockCombo (frame, highlighting and blocks) is drawn from a
+ * sprite that is rendered once per shape, rotation and highlighting state.
  */
 public class BlockCombosPanel extends JPanel {
+    private static final Color STANDARD_COLOR = Color.GRAY;
+    private static final Color AREA_HIGHLIGHT_COLOR = STANDARD_COLOR.darker().darker().darker();
+    private static final Color SAVE_TEXT_COLOR =
+            AREA_HIGHLIGHT_COLOR.brighter().brighter().brighter();
+    private static final Color WARNING_COLOR = new Color(200, 0, 0);
+    private static final Color ROTATION_BAR_COLOR = new Color(0, 153, 0);
+    private static final Color SELECTION_COLOR = new Color(50, 170, 10);
+    private static final Font FONT = new Font("Monospaced", Font.PLAIN, 12);
+    // a sprite covers the area of a BlockCombo including its frame
+    private static final int SPRITE_SIZE = 56;
+
     private final GameManager gameManager;
+    private final GameEngine engine;
 
-    private final SingleContainer<BlockCombo>[] openBlockCombos = new SingleContainer[3];
-    private final SingleContainer<BlockCombo> savedBlockCombo = new SingleContainer<>();
+    private final SingleContainer<BlockCombo>[] openBlockCombos;
+    private final SingleContainer<BlockCombo> savedBlockCombo;
 
     // -1: no highlighting, 0/1/2: highlight openBlockCombos[0/1/2],
     // 3: highlight saved combo, 4: highlight empty area for saved combos
@@ -23,124 +37,30 @@ public class BlockCombosPanel extends JPanel {
     // -1: no selection, 0/1/2: selected openBlockCombos[0/1/2], 3: selected saved combo
     private int selectedBlockCombo = -1;
 
-    // how many rounds has the player to use the saved BlockCombo
-    private final int maximumRemainingRoundsForSavedCombo = 4;
-    private int remainingRoundsForSavedCombo = maximumRemainingRoundsForSavedCombo;
+    // sprites of the BlockCombo areas by [shape id][rotation][highlighted ? 1 : 0]
+    // and of the empty areas by [highlighted ? 1 : 0], rendered on first use
+    private final BufferedImage[][][] comboSprites = new BufferedImage
+            [ComboShapeCatalog.getNumberOfShapes()][ComboShape.NUMBER_OF_ROTATIONS][2];
+    private final BufferedImage[] emptyAreaSprites = new BufferedImage[2];
+    // the background color the sprites have been rendered with
+    private Color spriteBackground = null;
 
 
-    BlockCombosPanel(GameManager gameM) {
+    BlockCombosPanel(GameManager gameM, GameEngine gameEngine) {
         gameManager = gameM;
+        engine = gameEngine;
 
-        openBlockCombos[0] = new SingleContainer<>();
-        openBlockCombos[1] = new SingleContainer<>();
-        openBlockCombos[2] = new SingleContainer<>();
-
-        // starts the game by creating the initial three BlockCombos
-        generateNewBlockCombos();
-    }
-
-    /**
-     * Restores the BlockCombosPanel based on the
-     * game state represented by given savegame.
-     * @param savegame the Savegame representing the game state to be restored
-     */
-    void restorePanel(Savegame savegame) {
-        // restore openBlockCombos
-        for (int i = 0; i < openBlockCombos.length; i++) {
-            openBlockCombos[i].clear();
-            if (savegame.getOpenCombos()[i].representsBlockCombo()) {
-                // container i shall contain a BlockCombo
-                openBlockCombos[i].store(
-                        savegame.getOpenCombos()[i].restoreBlockCombo());
-            }
-        }
-
-        // restore savedBlockCombo
-        savedBlockCombo.clear();
-        if (savegame.getSavedCombo().representsBlockCombo()) {
-            // there shall be a saved BlockCombo
-            savedBlockCombo.store(savegame.getSavedCombo().restoreBlockCombo());
-        }
-        remainingRoundsForSavedCombo = savegame.getRemainingRoundsForSavedCombo();
+        openBlockCombos = engine.getOpenBlockCombos();
+        savedBlockCombo = engine.getSavedBlockCombo();
     }
 
     /**
      * Resets the BlockCombosPanel to its initial state.
-     * All open or saved BlockCombos are removed.
+     * The selection and highlighting are removed.
      */
     void reset() {
-        // clear openBlockCombos
-        for (SingleContainer<BlockCombo> container : openBlockCombos) {
-            container.clear();
-        }
-        // clear savedBlockCombo
-        savedBlockCombo.clear();
-        remainingRoundsForSavedCombo = maximumRemainingRoundsForSavedCombo;
-    }
-
-    /**
-     * Gets the array with all SingleContainer for open BlockCombos.
-     * @return the openBlockCombos
-     */
-    SingleContainer<BlockCombo>[] getOpenBlockCombos() {
-        return openBlockCombos;
-    }
-
-    /**
-     * Gets the number of open BlockCombos.
-     * @return the number of non-empty SingleContainer in openBlockCombos.
-     */
-    int getNumberOfOpenBlockCombos() {
-        int numberOfOpenCombos = 0;
-
-        for (SingleContainer<BlockCombo> container : openBlockCombos) {
-            if (!container.isEmpty()) {
-                numberOfOpenCombos += 1;
-            }
-        }
-
-        return numberOfOpenCombos;
-    }
-
-    /**
-     * Gets the SingleContainer for saved BlockCombos.
-     * @return the savedBlockCombo
-     */
-    SingleContainer<BlockCombo> getSavedBlockCombo() {
-        return savedBlockCombo;
-    }
-
-    /**
-     * Gets the number of remaining rounds until the saved BlockCombo must be used.
-     * @return the remainingRoundsForSavedCombo
-     */
-    int getRemainingRoundsForSavedCombo() {
-        return remainingRoundsForSavedCombo;
-    }
-
-    /**
-     * Checks if player has any available (open) BlockCombos remaining.
-     * @return true if all SingleContainers of openBlockCombos is empty,
-     * false otherwise
-     */
-    boolean openBlockCombosIsEmpty() {
-        return openBlockCombos[0].isEmpty() && openBlockCombos[1].isEmpty()
-                && openBlockCombos[2].isEmpty();
-    }
-
-    /**
-     * Generates randomly three new BlockCombos which the player must use next.
-     * This is considered as the start of a new round.
-     */
-    void generateNewBlockCombos() {
-        openBlockCombos[0].store(BlockComboCreator.createRandomCombo());
-        openBlockCombos[1].store(BlockComboCreator.createRandomCombo());
-        openBlockCombos[2].store(BlockComboCreator.createRandomCombo());
-
-        // if a BlockCombo is saved, then its remaining rounds to use are reduced by one
-        if (!savedBlockCombo.isEmpty()) {
-            remainingRoundsForSavedCombo -= 1;
-        }
+        selectedBlockCombo = -1;
+        highlightedComboArea = -1;
     }
 
     /**
@@ -172,61 +92,29 @@ public class BlockCombosPanel extends JPanel {
     }
 
     /**
-     * Checks if player saved previously a BlockCombo which must be used in this round.
-     * @return true if there is a saved BlockCombo with 0 remaining rounds to use
+     * Gets the slot of the currently selected BlockCombo.
+     * @return -1 if no BlockCombo is selected, 0/1/2 for openBlockCombos[0/1/2],
+     *         3 for the saved BlockCombo
      */
-    boolean hasUrgentSavedCombo() {
-        return !savedBlockCombo.isEmpty() && remainingRoundsForSavedCombo == 0;
+    int getSelectedSlot() {
+        return selectedBlockCombo;
     }
 
     /**
      * Saves the currently selected BlockCombo by storing in savedBlockCombo.
      * The saved BlockCombo is then removed from openBlockCombos and deselected.
-     * Lets GameManager start next round if openBlockCombos is empty after saving.
+     * GameEngine starts next round if openBlockCombos is empty after saving.
      * Does nothing if savedBlockCombo is not empty.
      */
     void saveSelectedBlockCombo() {
-        if (savedBlockCombo.isEmpty()) {
-            // save BlockCombo
-            savedBlockCombo.store(openBlockCombos[selectedBlockCombo].getContent());
-            remainingRoundsForSavedCombo = maximumRemainingRoundsForSavedCombo;
-
-            // reset rotation of saved BlockCombo
-            getSelectedBlockCombo().resetRotation();
-
-            // remove saved BlockCombo from openBlockCombos and deselect it
-            openBlockCombos[selectedBlockCombo].clear();
+        if (engine.save(selectedBlockCombo)) {
+            // saved BlockCombo has been removed from openBlockCombos -> deselect it
             deselectBlockCombo();
 
             highlightedComboArea = 3;  // remember that mouse is over saved BlockCombo
-
-            // GameManager starts next round if necessary
-            gameManager.tryNextRound();
         }
     }
 
-    /**
-     * Removes the given BlockCombo from openBlockCombos or savedBlockCombo,
-     * depending on given index.
-     * Lets GameManager start next round if player used all available BlockCombos.
-     * Throws IllegalArgumentException if no BlockCombo is selected.
-     */
-    void consumeSelectedBlockCombo() {
-        if (selectedBlockCombo >= 0 && selectedBlockCombo < 3) {
-            openBlockCombos[selectedBlockCombo].clear();
-        }
-        else if (selectedBlockCombo == 3) {
-            savedBlockCombo.clear();
-        }
-        else {
-            throw new IllegalArgumentException("consumeSelectedBlockCombo() should " +
-                    "not be called if no BlockCombo is selected.");
-        }
-
-        // GameManager starts next round if necessary
-        gameManager.tryNextRound();
-    }
-
     /**
      * Selects a BlockCombo in openBlockCombos if
      * player clicked on any painted BlockCombo.
@@ -261,6 +149,7 @@ public class BlockCombosPanel extends JPanel {
      * @param e the MouseEvent invoked by player's click
      */
     void highlightBlockComboAreas(MouseEvent e) {
+        int previousComboArea = highlightedComboArea;
         highlightedComboArea = -1;
 
         // check if player hovers over open BlockCombos
@@ -288,6 +177,26 @@ public class BlockCombosPanel extends JPanel {
                 highlightedComboArea = 4;
             }
         }
+
+        // repaint only the areas whose highlighting changed
+        if (highlightedComboArea != previousComboArea) {
+            repaintComboArea(previousComboArea);
+            repaintComboArea(highlightedComboArea);
+        }
+    }
+
+    /**
+     * Repaints the screen area of an open or saved BlockCombo including the
+     * frame drawn around a selected BlockCombo.
+     * @param comboArea 0/1/2 for openBlockCombos[0/1/2], 3 or 4 for the area of
+     *                  the saved BlockCombo, -1 for none
+     */
+    private void repaintComboArea(int comboArea) {
+        if (comboArea == -1) {
+            return;
+        }
+        int areaX = comboArea < 3 ? 15 + comboArea * 65 : 15 + 3 * 65 + 20;
+        repaint(areaX - 1, 29, 58, 58);
     }
 
     /**
@@ -317,7 +226,7 @@ public class BlockCombosPanel extends JPanel {
     void selectBlockCombo(int index) {
         if (selectedBlockCombo != -1) {
             // reset rotation of old selected BlockCombo
-            getSelectedBlockCombo().resetRotation();
+            engine.resetRotation(selectedBlockCombo);
         }
 
         // set new selected BlockCombo
@@ -337,73 +246,145 @@ public class BlockCombosPanel extends JPanel {
      * @param g the Graphics object given by paintComponent()
      */
     private void drawBlockCombos(Graphics g) {
-        Color standardColor = Color.GRAY;
-        g.setColor(standardColor);
-
-        // draw areas for three open BlockCombos
-        for (int i = 0; i < 3; i++) {
-            g.drawRect(15 + i * 65, 30, 55, 55);
+        if (highlightedComboArea == 3 && gameManager.isGameOver()) {
+            highlightedComboArea = -1;
         }
-        // draw area for saved BlockCombo
-        g.drawRect(15 + 3 * 65 + 20, 30, 55, 55);
-
-        // draw highlighting for these four areas
-        drawComboAreaHighlighting(g);
-        g.setColor(standardColor);
 
-        // draw open BlockCombos
+        // draw areas of the three open BlockCombos and of the saved BlockCombo
+        // with their highlighting
         for (int i = 0; i < openBlockCombos.length; i++) {
-            if (!openBlockCombos[i].isEmpty()) {
-                BlockCombo combo = openBlockCombos[i].getContent();
-                int[] initialPosition = {39 + i * 65, 54};
-                drawSingleBlockCombo(g, combo, initialPosition);
-            }
+            drawComboArea(g, openBlockCombos[i], i, 15 + i * 65);
         }
+        drawComboArea(g, savedBlockCombo, 3, 15 + 3 * 65 + 20);
+        if (highlightedComboArea == 4) {
+            // empty area for saved BlockCombos is highlighted
+            g.setColor(SAVE_TEXT_COLOR);
+            g.drawString("Save", 15 + 3 * 65 + 20 + 15, 61);
+        }
+        g.setColor(STANDARD_COLOR);
 
-        // draw saved BlockCombo (if saved any)
-        if (!savedBlockCombo.isEmpty()) {
-            int[] initialPosition = {39 + 3 * 65 + 20, 54};
-            drawSingleBlockCombo(g, savedBlockCombo.getContent(), initialPosition);
-            // highlight area for saved BlockCombo if remainingRounds == 0
-            if (remainingRoundsForSavedCombo == 0) {
-                g.setColor(new Color(200, 0, 0));
-                g.drawRect(15 + 3 * 65 + 20, 30, 55, 55);
-                g.setColor(standardColor);
-            }
+        // highlight area for saved BlockCombo if remainingRounds == 0
+        if (!savedBlockCombo.isEmpty() && engine.getRemainingRoundsForSavedCombo() == 0) {
+            g.setColor(WARNING_COLOR);
+            g.drawRect(15 + 3 * 65 + 20, 30, 55, 55);
+            g.setColor(STANDARD_COLOR);
         }
 
         // draw remainingRemainingRoundsForSavedCombo (if any combo saved)
-        g.setFont(new Font("Monospaced", Font.PLAIN, 12));
+        g.setFont(FONT);
+        int remainingRoundsForSavedCombo = engine.getRemainingRoundsForSavedCombo();
         if (!savedBlockCombo.isEmpty()) {
-            if (remainingRoundsForSavedCombo != maximumRemainingRoundsForSavedCombo)  {
+            if (remainingRoundsForSavedCombo
+                    != engine.getMaximumRemainingRoundsForSavedCombo())  {
                 if (remainingRoundsForSavedCombo == 0) {
-                    g.setColor(new Color(200, 0, 0));
+                    g.setColor(WARNING_COLOR);
                 }
                 g.drawString(String.valueOf(remainingRoundsForSavedCombo), 255, 26);
-                g.setColor(standardColor);
+                g.setColor(STANDARD_COLOR);
             }
         }
 
         // draw number of remaining rotations
         g.drawString("Rotations: " + gameManager.getRotations(), 15, 20);
         if (isAnyBlockComboSelected() && getSelectedBlockCombo().isRotated()) {
-            g.setColor(new Color(200, 0, 0));
+            g.setColor(WARNING_COLOR);
             g.drawString(" -1", 100, 20);
-            g.setColor(standardColor);
+            g.setColor(STANDARD_COLOR);
         }
         // draw bar that shows when next rotation is unlocked
         g.drawRect(15, 1, 61, 3);
-        g.setColor(new Color(0, 153, 0));
+        g.setColor(ROTATION_BAR_COLOR);
         g.fillRect(16, 2, gameManager.getNextRotation() * 6 / 10, 2);
-        g.setColor(standardColor);
+        g.setColor(STANDARD_COLOR);
 
         // draw selection
         drawSelection(g);
     }
 
     /**
-     * Draws the given BlockCombo to this BlockCombosPanel.
+     * Draws the sprite of the area of a BlockCombo.
      * @param g the Graphics object given by paintComponent()
+     * @param container the container of the BlockCombo
+     * @param comboArea 0/1/2 for openBlockCombos[0/1/2], 3 for the saved BlockCombo
+     * @param areaX the x-coordinate of the area
+     */
+    private void drawComboArea(Graphics g, SingleContainer<BlockCombo> container,
+                               int comboArea, int areaX) {
+        boolean highlighted = highlightedComboArea == comboArea
+                || (comboArea == 3 && highlightedComboArea == 4);
+        g.drawImage(getSprite(container.isEmpty() ? null : container.getContent(), highlighted),
+                    areaX, 30, null);
+    }
+
+    /**
+     * Gets the sprite of a BlockCombo area. It is rendered if it is not cached
+     * yet or the background color has changed.
+     * @param combo the BlockCombo in the area, null for an empty area
+     * @param highlighted specifies if the area is highlighted
+     * @return the sprite
+     */
+    private BufferedImage getSprite(BlockCombo combo, boolean highlighted) {
+        if (!getBackground().equals(spriteBackground)) {
+            // all sprites have to be rendered again
+            for (BufferedImage[][] shapeSprites : comboSprites) {
+                for (BufferedImage[] rotationSprites : shapeSprites) {
+                    rotationSprites[0] = null;
+                    rotationSprites[1] = null;
+                }
+            }
+            emptyAreaSprites[0] = null;
+            emptyAreaSprites[1] = null;
+            spriteBackground = getBackground();
+        }
+
+        int highlighting = highlighted ? 1 : 0;
+        if (combo == null) {
+            if (emptyAreaSprites[highlighting] == null) {
+                emptyAreaSprites[highlighting] = renderSprite(null, highlighted);
+            }
+            return emptyAreaSprites[highlighting];
+        }
+        BufferedImage[] sprites =
+                comboSprites[combo.getShape().getId()][combo.getCurrentRotation()];
+        if (sprites[highlighting] == null) {
+            sprites[highlighting] = renderSprite(combo, highlighted);
+        }
+        return sprites[highlighting];
+    }
+
+    /**
+     * Renders the sprite of a BlockCombo area: its frame, its highlighting and
+     * the BlockCombo in its current rotation.
+     * @param combo the BlockCombo in the area, null for an empty area
+     * @param highlighted specifies if the area is highlighted
+     * @return the sprite
+     */
+    private BufferedImage renderSprite(BlockCombo combo, boolean highlighted) {
+        GraphicsConfiguration configuration = getGraphicsConfiguration();
+        BufferedImage sprite = configuration != null
+                ? configuration.createCompatibleImage(SPRITE_SIZE, SPRITE_SIZE)
+                : new BufferedImage(SPRITE_SIZE, SPRITE_SIZE, BufferedImage.TYPE_INT_RGB);
+
+        Graphics g = sprite.getGraphics();
+        g.setColor(getBackground());
+        g.fillRect(0, 0, SPRITE_SIZE, SPRITE_SIZE);
+        g.setColor(STANDARD_COLOR);
+        g.drawRect(0, 0, 55, 55);
+        if (highlighted) {
+            g.setColor(AREA_HIGHLIGHT_COLOR);
+            g.fillRect(1, 1, 54, 54);
+        }
+        if (combo != null) {
+            g.setColor(STANDARD_COLOR);
+            drawSingleBlockCombo(g, combo, new int[] {24, 24});
+        }
+        g.dispose();
+        return sprite;
+    }
+
+    /**
+     * Draws the given BlockCombo to a sprite.
+     * @param g the Graphics object of the sprite
      * @param combo the BlockCombo to be drawn
      * @param initialPosition the position for the BlockCombo's start block
      *                        (without offset)
@@ -428,7 +409,7 @@ public class BlockCombosPanel extends JPanel {
      * @param g the Graphics object given by paintComponent()
      */
     private void drawSelection(Graphics g) {
-        g.setColor(new Color(50, 170, 10));
+        g.setColor(SELECTION_COLOR);
 
         switch(selectedBlockCombo) {
             case -1:
@@ -446,42 +427,6 @@ public class BlockCombosPanel extends JPanel {
         }
     }
 
-    /**
-     * Highlights the screen area of either one of the open BlockCombos or of the
-     * saved BlockCombo. This Highlighting marks that the highlighted BlockCombo
-     * can be selected or (for empty area of saved BlockCombo) that the currently
-     * selected BlockCombo can be saved.
-     * @param g the Graphics object given by paintComponent()
-     */
-    private void drawComboAreaHighlighting(Graphics g) {
-        g.setColor(g.getColor().darker().darker().darker());
-
-        switch(highlightedComboArea) {
-            case -1:
-                // no highlighting
-                break;
-            case 3:
-                if (gameManager.isGameOver()) {
-                    highlightedComboArea = -1;
-                    break;
-                }
-                // saved BlockCombo is highlighted
-                g.fillRect(16 + 3 * 65 + 20, 31, 54, 54);
-                break;
-            case 4:
-                // empty area for saved BlockCombos is highlighted
-                g.fillRect(16 + 3 * 65 + 20, 31, 54, 54);
-                g.setColor(g.getColor().brighter().brighter().brighter());
-                g.drawString("Save", 15 + 3 * 65 + 20 + 15, 61);
-                break;
-            default:
-                // one of the open BlockCombos is highlighted
-                g.fillRect(16 + highlightedComboArea * 65, 31,
-                           54, 54);
-                break;
-        }
-    }
-
     @Override protected void paintComponent(Graphics g) {
         super.paintComponent(g);
         drawBlockCombos(g);
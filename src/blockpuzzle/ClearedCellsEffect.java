@@ -10,12 +10,10 @@ import java.awt.event.ActionListener;
  */
 public class ClearedCellsEffect implements ActionListener {
     GameManager gameManager;
-    ScorePanel scorePanel;
     GridPanel gridPanel;
 
-    ClearedCellsEffect(GameManager gameM, GridPanel gridP, ScorePanel scoreP) {
+    ClearedCellsEffect(GameManager gameM, GridPanel gridP) {
         gameManager = gameM;
-        scorePanel = scoreP;
         gridPanel = gridP;
     }
 
@@ -24,7 +22,7 @@ public class ClearedCellsEffect implements ActionListener {
      * the player just cleared some full rows/columns.
      */
     void tryClearedCellsEffect() {
-        if (gridPanel.getGrid().getRecentlyClearedCells().isEmpty()) {
+        if (!gridPanel.getGrid().hasRecentlyClearedCells()) {
             // no cells recently cleared -> no effect
             return;
         }
@@ -43,7 +41,7 @@ public class ClearedCellsEffect implements ActionListener {
             // recentlyClearedTimer is 0 -> effect shall end
             gridPanel.getGrid().clearRecentlyClearedCells();
             // remove recently added score note in ScorePanel
-            scorePanel.resetRecentlyAddedScore();
+            gameManager.getEngine().resetRecentlyAddedScore();
             gameManager.repaint();
         }
     }
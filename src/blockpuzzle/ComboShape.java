@@ -0,0 +1,499 @@
+package blockpuzzle;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A ComboShape is the immutable description of one kind of BlockCombo.
+ * All data that depends only on the shape and its rotation (the rotated
+ * formations, bounding boxes, draw offsets and the Grid masks for every anchor)
+ * is computed once when the ComboShape is created.
+ *
+ * ComboShapes are interned in the ComboShapeCatalog, so they can be compared
+ * by identity. They must not be created anywhere else.
+ */
+public final class ComboShape {
+    static final int NUMBER_OF_ROTATIONS = 4;
+    // a formation is encoded in a box of KEY_BOX_SIZE * KEY_BOX_SIZE blocks
+    private static final int KEY_BOX_SIZE = 5;
+    private static final long SHAPE_KEY_MASK = (1L << (KEY_BOX_SIZE * KEY_BOX_SIZE)) - 1;
+    private static final int NUMBER_OF_CELLS = Grid.SIZE * Grid.SIZE;
+
+    private final int id;
+    private final String name;
+
+    // formations[r][i] = [i_x, i_y] is block i after r rotations by 90° to the right
+    private final int[][][] formations;
+    private final List<List<int[]>> formationLists;
+
+    // bounds[r] = [minX, maxX, minY, maxY] relative to the start block
+    private final int[][] bounds;
+    private final double[][] drawOffsets;
+
+    // Grid masks of the combo for each rotation and each anchor cell index
+    private final long[][] anchorMasksLow;
+    private final long[][] anchorMasksHigh;
+    // anchors for which all blocks of the combo lie inside the Grid
+    private final long[] legalAnchorsLow;
+    private final long[] legalAnchorsHigh;
+    // blockOffsets[r][i] = cell index of block i minus cell index of the start block
+    private final int[][] blockOffsets;
+
+    // canonical keys of the formations, see computeFormationKey()
+    private final long[] formationKeys;
+    // number of different appearances reachable by rotating (1, 2 or 4)
+    private final int symmetryOrder;
+
+    ComboShape(int id, String name, int[][] formation) {
+        this.id = id;
+        this.name = name;
+
+        formations = new int[NUMBER_OF_ROTATIONS][][];
+        formations[0] = copyFormation(formation);
+        for (int r = 1; r < NUMBER_OF_ROTATIONS; r++) {
+            formations[r] = rotateFormation(formations[r - 1]);
+        }
+
+        List<List<int[]>> lists = new ArrayList<>();
+        bounds = new int[NUMBER_OF_ROTATIONS][];
+        drawOffsets = new double[NUMBER_OF_ROTATIONS][];
+        anchorMasksLow = new long[NUMBER_OF_ROTATIONS][NUMBER_OF_CELLS];
+        anchorMasksHigh = new long[NUMBER_OF_ROTATIONS][NUMBER_OF_CELLS];
+        legalAnchorsLow = new long[NUMBER_OF_ROTATIONS];
+        legalAnchorsHigh = new long[NUMBER_OF_ROTATIONS];
+        blockOffsets = new int[NUMBER_OF_ROTATIONS][];
+        formationKeys = new long[NUMBER_OF_ROTATIONS];
+
+        for (int r = 0; r < NUMBER_OF_ROTATIONS; r++) {
+            lists.add(Collections.unmodifiableList(Arrays.asList(formations[r])));
+            bounds[r] = computeBounds(formations[r]);
+            drawOffsets[r] = computeDrawOffset(formations[r]);
+            formationKeys[r] = computeFormationKey(formations[r], bounds[r]);
+            computeAnchorMasks(r);
+            blockOffsets[r] = computeBlockOffsets(formations[r]);
+        }
+        formationLists = Collections.unmodifiableList(lists);
+
+        // the appearance after r rotations is the same as the original
+        // appearance iff both formations have the same shape key
+        if (getShapeKey(1) == getShapeKey(0)) {
+            symmetryOrder = 1;
+        }
+        else if (getShapeKey(2) == getShapeKey(0)) {
+            symmetryOrder = 2;
+        }
+        else {
+            symmetryOrder = NUMBER_OF_ROTATIONS;
+        }
+    }
+
+    /**
+     * Gets the id of this ComboShape, i.e. its index in the ComboShapeCatalog.
+     * @return the id
+     */
+    int getId() {
+        return id;
+    }
+
+    /**
+     * Gets the name of this ComboShape.
+     * @return the name
+     */
+    String getName() {
+        return name;
+    }
+
+    /**
+     * Gets the number of blocks of this ComboShape.
+     * @return the number of blocks
+     */
+    int getNumberOfBlocks() {
+        return formations[0].length;
+    }
+
+    /**
+     * Gets the formation of this ComboShape after given number of rotations.
+     * The returned list and its blocks must not be modified.
+     * @param rotation the number of rotations by 90° to the right (0..3)
+     * @return the rotated formation
+     */
+    List<int[]> getFormation(int rotation) {
+        return formationLists.get(rotation);
+    }
+
+    /**
+     * Gets the bounding box of this ComboShape after given number of rotations.
+     * The returned array must not be modified.
+     * @param rotation the number of rotations by 90° to the right (0..3)
+     * @return [minX, maxX, minY, maxY] relative to the start block
+     */
+    int[] getBounds(int rotation) {
+        return bounds[rotation];
+    }
+
+    /**
+     * Gets the offset (in blocks) for drawing this ComboShape into BlockCombosPanel
+     * after given number of rotations. See BlockCombo.getDrawOffset().
+     * The returned array must not be modified.
+     * @param rotation the number of rotations by 90° to the right (0..3)
+     * @return the offset [off_x, off_y]
+     */
+    double[] getDrawOffset(int rotation) {
+        return drawOffsets[rotation];
+    }
+
+    /**
+     * Gets the rotational symmetry order of this ComboShape, i.e. the number of
+     * different appearances that can be reached by rotating it.
+     * @return the symmetryOrder (1, 2 or 4)
+     */
+    int getSymmetryOrder() {
+        return symmetryOrder;
+    }
+
+    /**
+     * Gets the canonical key of the formation after given number of rotations.
+     * Two formations have the same key if and only if they contain the same
+     * blocks (not considering the blocks' order).
+     * @param rotation the number of rotations by 90° to the right (0..3)
+     * @return the formation key
+     */
+    long getFormationKey(int rotation) {
+        return formationKeys[rotation];
+    }
+
+    /**
+     * Gets the canonical key of the appearance after given number of rotations.
+     * Two formations have the same shape key if and only if one can be
+     * moved onto the other, i.e. if they only differ in their start block.
+     * @param rotation the number of rotations by 90° to the right (0..3)
+     * @return the shape key
+     */
+    long getShapeKey(int rotation) {
+        return formationKeys[rotation] & SHAPE_KEY_MASK;
+    }
+
+    /**
+     * Checks if all blocks of this ComboShape lie inside the Grid if its start
+     * block is placed at the cell with given index.
+     * @param rotation the number of rotations by 90° to the right (0..3)
+     * @param anchor the cell index of the start block (see Grid.cellIndex())
+     * @return true if the anchor is legal, false otherwise
+     */
+    boolean isLegalAnchor(int rotation, int anchor) {
+        if (anchor < 64) {
+            return (legalAnchorsLow[rotation] & (1L << anchor)) != 0;
+        }
+        return (legalAnchorsHigh[rotation] & (1L << (anchor - 64))) != 0;
+    }
+
+    /**
+     * Gets the lower word of the bitmask of all legal anchors (see isLegalAnchor()).
+     * @param rotation the number of rotations by 90° to the right (0..3)
+     * @return the legal anchors with cell indices 0..63
+     */
+    long getLegalAnchorsLow(int rotation) {
+        return legalAnchorsLow[rotation];
+    }
+
+    /**
+     * Gets the higher word of the bitmask of all legal anchors (see isLegalAnchor()).
+     * @param rotation the number of rotations by 90° to the right (0..3)
+     * @return the legal anchors with cell indices 64..80
+     */
+    long getLegalAnchorsHigh(int rotation) {
+        return legalAnchorsHigh[rotation];
+    }
+
+    /**
+     * Gets the lower word of the Grid mask covered by this ComboShape if its
+     * start block is placed at the cell with given index.
+     * Only meaningful if isLegalAnchor(rotation, anchor) is true.
+     * @param rotation the number of rotations by 90° to the right (0..3)
+     * @param anchor the cell index of the start block (see Grid.cellIndex())
+     * @return the mask for cell indices 0..63
+     */
+    long getAnchorMaskLow(int rotation, int anchor) {
+        return anchorMasksLow[rotation][anchor];
+    }
+
+    /**
+     * Gets the higher word of the Grid mask covered by this ComboShape if its
+     * start block is placed at the cell with given index.
+     * Only meaningful if isLegalAnchor(rotation, anchor) is true.
+     * @param rotation the number of rotations by 90° to the right (0..3)
+     * @param anchor the cell index of the start block (see Grid.cellIndex())
+     * @return the mask for cell indices 64..80
+     */
+    long getAnchorMaskHigh(int rotation, int anchor) {
+        return anchorMasksHigh[rotation][anchor];
+    }
+
+    /**
+     * Gets the lower word of the bitmask of all anchors where this ComboShape
+     * fits into the given bitboard, i.e. all its blocks lie on empty cells.
+     * All anchors are computed at once: for each block the bitboard is shifted
+     * by the block's offset, so that bit a tells if the block's cell is free
+     * when the start block is placed at anchor a.
+     * @param rotation the number of rotations by 90° to the right (0..3)
+     * @param occupiedLow the non-empty cells with indices 0..63
+     * @param occupiedHigh the non-empty cells with indices 64..80
+     * @return the fitting anchors with cell indices 0..63
+     */
+    long getFittingAnchorsLow(int rotation, long occupiedLow, long occupiedHigh) {
+        long fitting = legalAnchorsLow[rotation];
+        for (int offset : blockOffsets[rotation]) {
+            fitting &= ~shiftLow(occupiedLow, occupiedHigh, offset);
+        }
+        return fitting;
+    }
+
+    /**
+     * Gets the higher word of the bitmask of all anchors where this ComboShape
+     * fits into the given bitboard, see getFittingAnchorsLow().
+     * @param rotation the number of rotations by 90° to the right (0..3)
+     * @param occupiedLow the non-empty cells with indices 0..63
+     * @param occupiedHigh the non-empty cells with indices 64..80
+     * @return the fitting anchors with cell indices 64..80
+     */
+    long getFittingAnchorsHigh(int rotation, long occupiedLow, long occupiedHigh) {
+        long fitting = legalAnchorsHigh[rotation];
+        for (int offset : blockOffsets[rotation]) {
+            fitting &= ~shiftHigh(occupiedLow, occupiedHigh, offset);
+        }
+        return fitting;
+    }
+
+    /**
+     * Finds the rotation of this ComboShape whose formation contains exactly
+     * the blocks of the given formation (not considering the blocks' order).
+     * @param formation the formation to be looked up
+     * @return the number of rotations (0..3), or -1 if no rotation matches
+     */
+    int findRotation(List<int[]> formation) {
+        for (int r = 0; r < NUMBER_OF_ROTATIONS; r++) {
+            if (sameBlocks(formations[r], formation)) {
+                return r;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Calculates the Grid masks and the legal anchors for given rotation.
+     * @param rotation the number of rotations by 90° to the right (0..3)
+     */
+    private void computeAnchorMasks(int rotation) {
+        for (int anchorX = 0; anchorX < Grid.SIZE; anchorX++) {
+            for (int anchorY = 0; anchorY < Grid.SIZE; anchorY++) {
+                int anchor = Grid.cellIndex(anchorX, anchorY);
+                long maskLow = 0;
+                long maskHigh = 0;
+                boolean legal = true;
+
+                for (int[] block : formations[rotation]) {
+                    int x = anchorX + block[0];
+                    int y = anchorY + block[1];
+                    if (x < 0 || x >= Grid.SIZE || y < 0 || y >= Grid.SIZE) {
+                        // block would be placed out of bounds of the Grid
+                        legal = false;
+                        break;
+                    }
+                    int index = Grid.cellIndex(x, y);
+                    if (index < 64) {
+                        maskLow |= 1L << index;
+                    }
+                    else {
+                        maskHigh |= 1L << (index - 64);
+                    }
+                }
+
+                if (legal) {
+                    anchorMasksLow[rotation][anchor] = maskLow;
+                    anchorMasksHigh[rotation][anchor] = maskHigh;
+                    if (anchor < 64) {
+                        legalAnchorsLow[rotation] |= 1L << anchor;
+                    }
+                    else {
+                        legalAnchorsHigh[rotation] |= 1L << (anchor - 64);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Calculates the cell index offsets of the blocks of the given formation.
+     * Since only legal anchors are considered, a block never wraps around
+     * to another row, so its offset is the same for every anchor.
+     * @param formation the formation
+     * @return the offsets relative to the cell index of the start block
+     */
+    private static int[] computeBlockOffsets(int[][] formation) {
+        int[] offsets = new int[formation.length];
+        for (int i = 0; i < formation.length; i++) {
+            offsets[i] = Grid.cellIndex(formation[i][0], formation[i][1]);
+        }
+        return offsets;
+    }
+
+    /**
+     * Gets the lower word of the bitboard shifted by given offset, i.e. bit a
+     * of the result is the bit of cell a + offset of the bitboard.
+     * @param low the cells with indices 0..63
+     * @param high the cells with indices 64..80
+     * @param offset the offset (|offset| < 64)
+     * @return the shifted cells with indices 0..63
+     */
+    private static long shiftLow(long low, long high, int offset) {
+        if (offset > 0) {
+            return low >>> offset | high << (64 - offset);
+        }
+        return low << -offset;
+    }
+
+    /**
+     * Gets the higher word of the bitboard shifted by given offset, i.e. bit a
+     * of the result is the bit of cell a + offset of the bitboard.
+     * @param low the cells with indices 0..63
+     * @param high the cells with indices 64..80
+     * @param offset the offset (|offset| < 64)
+     * @return the shifted cells with indices 64..80
+     */
+    private static long shiftHigh(long low, long high, int offset) {
+        if (offset < 0) {
+            return high << -offset | low >>> (64 + offset);
+        }
+        return high >>> offset;
+    }
+
+    /**
+     * Creates a deep copy of the given formation.
+     * @param formation the formation to be copied
+     * @return the copy
+     */
+    private static int[][] copyFormation(int[][] formation) {
+        int[][] copy = new int[formation.length][];
+        for (int i = 0; i < formation.length; i++) {
+            copy[i] = new int[] {formation[i][0], formation[i][1]};
+        }
+        return copy;
+    }
+
+    /**
+     * Creates the formation that results from rotating the given formation
+     * 90° to the right around its start block. The blocks' order is kept.
+     * @param formation the formation to be rotated
+     * @return the rotated formation
+     */
+    private static int[][] rotateFormation(int[][] formation) {
+        int[][] rotated = new int[formation.length][];
+        for (int i = 0; i < formation.length; i++) {
+            rotated[i] = new int[] {-formation[i][1], formation[i][0]};
+        }
+        return rotated;
+    }
+
+    /**
+     * Calculates the bounding box of the given formation.
+     * @param formation the formation
+     * @return [minX, maxX, minY, maxY] relative to the start block
+     */
+    private static int[] computeBounds(int[][] formation) {
+        int[] box = {0, 0, 0, 0};
+        for (int[] block : formation) {
+            box[0] = Math.min(box[0], block[0]);
+            box[1] = Math.max(box[1], block[0]);
+            box[2] = Math.min(box[2], block[1]);
+            box[3] = Math.max(box[3], block[1]);
+        }
+        return box;
+    }
+
+    /**
+     * Calculates the canonical key of the given formation.
+     * The formation is moved so that its bounding box starts at (0, 0) and each
+     * block (x, y) sets bit y * KEY_BOX_SIZE + x of the key (the shape key).
+     * The position of the start block in the moved formation is stored in the
+     * bits above the shape key.
+     * @param formation the formation
+     * @param box the bounding box of the formation
+     * @return the formation key
+     */
+    private static long computeFormationKey(int[][] formation, int[] box) {
+        long key = 0;
+        for (int[] block : formation) {
+            key |= 1L << ((block[1] - box[2]) * KEY_BOX_SIZE + (block[0] - box[0]));
+        }
+        int keyBits = KEY_BOX_SIZE * KEY_BOX_SIZE;
+        key |= (long) -box[0] << keyBits;
+        key |= (long) -box[2] << (keyBits + 3);
+        return key;
+    }
+
+    /**
+     * Calculates the offset (in blocks) for drawing the given formation into
+     * BlockCombosPanel, so that it is drawn centrally.
+     * @param formation the formation
+     * @return the offset [off_x, off_y]
+     */
+    private static double[] computeDrawOffset(int[][] formation) {
+        int blocksLeftOfStartBlock = 0;
+        int blocksRightOfStartBlock = 0;
+        int blocksAboveStartBlock = 0;
+        int blocksUnderStartBlock = 0;
+
+        for (int[] block : formation) {
+            if (block[0] > 0 && block[0] > blocksRightOfStartBlock) {
+                blocksRightOfStartBlock += 1;
+            }
+            else if (block[0] < 0 && block[0] < blocksLeftOfStartBlock) {
+                blocksLeftOfStartBlock -= 1;
+            }
+            if (block[1] > 0 && block[1] > blocksUnderStartBlock) {
+                blocksUnderStartBlock += 1;
+            }
+            else if (block[1] < 0 && block[1] < blocksAboveStartBlock) {
+                blocksAboveStartBlock -= 1;
+            }
+        }
+
+        return new double[] {
+                (double)(blocksLeftOfStartBlock + blocksRightOfStartBlock) / -2,
+                (double)(blocksAboveStartBlock + blocksUnderStartBlock) / -2
+        };
+    }
+
+    /**
+     * Checks if both formations contain the same blocks (not considering the order).
+     * @param formation the first formation
+     * @param other the second formation
+     * @return true if both formations contain the same blocks, false otherwise
+     */
+    private static boolean sameBlocks(int[][] formation, List<int[]> other) {
+        if (formation.length != other.size()) {
+            return false;
+        }
+        for (int[] block : formation) {
+            boolean blockFound = false;
+            for (int[] otherBlock : other) {
+                if (Arrays.equals(block, otherBlock)) {
+                    blockFound = true;
+                    break;
+                }
+            }
+            if (!blockFound) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+}
@@ -0,0 +1,97 @@
+package blockpuzzle;
+
+import java.util.List;
+
+/**
+ * The ComboShapeCatalog holds the ComboShape of every legal BlockCombo.
+ * The catalog is built once when the class is loaded and never changes
+ * afterwards. The id of a ComboShape is its index in the catalog.
+ *
+ * The size AxB_C of a ComboShape states that the ComboShape
+ * has A blocks in x-direction and B blocks in y-direction
+ * with a total of C blocks.
+ */
+public final class ComboShapeCatalog {
+
+    static final ComboShape SHAPE_1x1_1 = new ComboShape(0, "1x1_1",
+            new int[][] {{0, 0}});
+    static final ComboShape SHAPE_1x2_2 = new ComboShape(1, "1x2_2",
+            new int[][] {{0, 0}, {0, 1}});
+    static final ComboShape SHAPE_1x3_3 = new ComboShape(2, "1x3_3",
+            new int[][] {{0, 0}, {0, 1}, {0, 2}});
+    static final ComboShape SHAPE_1x4_4 = new ComboShape(3, "1x4_4",
+            new int[][] {{0, 0}, {0, 1}, {0, 2}, {0, 3}});
+    static final ComboShape SHAPE_1x5_5 = new ComboShape(4, "1x5_5",
+            new int[][] {{0, 0}, {0, 1}, {0, 2}, {0, 3}, {0, 4}});
+    static final ComboShape SHAPE_2x2_3 = new ComboShape(5, "2x2_3",
+            new int[][] {{0, 0}, {1, 0}, {0, 1}});
+    static final ComboShape SHAPE_2x2_4 = new ComboShape(6, "2x2_4",
+            new int[][] {{0, 0}, {1, 0}, {0, 1}, {1, 1}});
+    static final ComboShape SHAPE_2x3_4 = new ComboShape(7, "2x3_4",
+            new int[][] {{0, 0}, {1, 0}, {0, 1}, {0, 2}});
+    static final ComboShape SHAPE_3x3_5 = new ComboShape(8, "3x3_5",
+            new int[][] {{0, 0}, {1, 0}, {2, 0}, {0, 1}, {0, 2}});
+    static final ComboShape SHAPE_DIAGONAL_2 = new ComboShape(9, "diagonal_2",
+            new int[][] {{0, 0}, {1, 1}});
+    static final ComboShape SHAPE_DIAGONAL_3 = new ComboShape(10, "diagonal_3",
+            new int[][] {{0, 0}, {1, 1}, {2, 2}});
+    static final ComboShape SHAPE_DIAGONAL_4 = new ComboShape(11, "diagonal_4",
+            new int[][] {{0, 0}, {1, 1}, {2, 2}, {3, 3}});
+    static final ComboShape SHAPE_T_4 = new ComboShape(12, "T_4",
+            new int[][] {{0, 0}, {1, 0}, {-1, 0}, {0, 1}});
+    static final ComboShape SHAPE_T_5 = new ComboShape(13, "T_5",
+            new int[][] {{0, 0}, {1, 0}, {-1, 0}, {0, 1}, {0, 2}});
+    static final ComboShape SHAPE_PLUS_5 = new ComboShape(14, "Plus_5",
+            new int[][] {{0, 0}, {0, -1}, {0, 1}, {-1, 0}, {1, 0}});
+    static final ComboShape SHAPE_X_5 = new ComboShape(15, "X_5",
+            new int[][] {{0, 0}, {-1, -1}, {1, -1}, {-1, 1}, {1, 1}});
+    static final ComboShape SHAPE_CIRCLE_4 = new ComboShape(16, "Circle_4",
+            new int[][] {{0, 0}, {-1, 1}, {1, 1}, {0, 2}});
+
+    private static final ComboShape[] shapes = {
+            SHAPE_1x1_1, SHAPE_1x2_2, SHAPE_1x3_3, SHAPE_1x4_4, SHAPE_1x5_5,
+            SHAPE_2x2_3, SHAPE_2x2_4, SHAPE_2x3_4, SHAPE_3x3_5,
+            SHAPE_DIAGONAL_2, SHAPE_DIAGONAL_3, SHAPE_DIAGONAL_4,
+            SHAPE_T_4, SHAPE_T_5, SHAPE_PLUS_5, SHAPE_X_5, SHAPE_CIRCLE_4
+    };
+
+    private ComboShapeCatalog() {
+    }
+
+    /**
+     * Gets the number of ComboShapes in the catalog.
+     * @return the number of ComboShapes
+     */
+    static int getNumberOfShapes() {
+        return shapes.length;
+    }
+
+    /**
+     * Gets the ComboShape with given id.
+     * Throws IllegalArgumentException if no ComboShape has this id.
+     * @param id the id of the ComboShape
+     * @return the ComboShape
+     */
+    static ComboShape getShape(int id) {
+        if (id < 0 || id >= shapes.length) {
+            throw new IllegalArgumentException("No ComboShape with id " + id + ".");
+        }
+        return shapes[id];
+    }
+
+    /**
+     * Finds the ComboShape that has the given formation in any of its rotations.
+     * Throws IllegalArgumentException if no ComboShape matches.
+     * @param formation the formation to be looked up
+     * @return the matching ComboShape
+     */
+    static ComboShape findShape(List<int[]> formation) {
+        for (ComboShape shape : shapes) {
+            if (shape.findRotation(formation) >= 0) {
+                return shape;
+            }
+        }
+        throw new IllegalArgumentException("No ComboShape matches the given formation.");
+    }
+
+}
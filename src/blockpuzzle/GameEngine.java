@@ -0,0 +1,892 @@
+package blockpuzzle;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntConsumer;
+import java.util.random.RandomGenerator;
+
+/**
+ * A GameEngine contains the complete state and all rules of a game:
+ * the Grid, the open and saved BlockCombos, the rotation economy,
+ * the scores and the game over state.
+ *
+ * The GameEngine does not depend on Swing, so games can be played without
+ * any display. The panels of the GameManager only render its state.
+ *
+ * BlockCombos are addressed by slots: slots 0/1/2 contain the open
+ * BlockCombos and slot SAVED_SLOT contains the saved BlockCombo.
+ *
+ * Every game has a seed for its own random number generator, which creates
+ * all BlockCombos of the game. So a game is fully reproducible from its
+ * seed and its moves.
+ *
+ * The Zobrist hash of the game state (see getStateHash()) is updated with
+ * every change of the Grid, the slots and the rotation counters.
+ *
+ * All moves are recorded in a MoveJournal, so they can be undone and redone.
+ * The BlockCombos of an undone round are handed out again in the next round,
+ * so undoing does not give the player new BlockCombos.
+ *
+ * A change listener is notified after every change of the state that a
+ * Savegame contains (moves, undos and restarts), e.g. to save the game.
+ * It receives the move (see MoveGenerator), UNDONE or RESTARTED.
+ */
+public class GameEngine {
+    static final int NUMBER_OF_OPEN_SLOTS = 3;
+    static final int SAVED_SLOT = 3;
+    // must be increased with every change of the rules, see ReplayFormat
+    static final short RULES_VERSION = 1;
+    // changes passed to the change listener besides moves
+    static final int UNDONE = -1;
+    static final int RESTARTED = -2;
+
+    private final Grid grid = new Grid();
+
+    private final SingleContainer<BlockCombo>[] openBlockCombos =
+            new SingleContainer[NUMBER_OF_OPEN_SLOTS];
+    private final SingleContainer<BlockCombo> savedBlockCombo = new SingleContainer<>();
+
+    // how many rounds has the player to use the saved BlockCombo
+    private final int maximumRemainingRoundsForSavedCombo = 4;
+    private int remainingRoundsForSavedCombo = maximumRemainingRoundsForSavedCombo;
+
+    // how many BlockCombos can the player rotate
+    private final int initialRotations = 3;
+    private int rotations = initialRotations;
+
+    // when nextRotation reaches 100, player gets a new rotation
+    private int nextRotation = 0;
+
+    private int highScore = 0;
+    private int score = 0;
+    private int recentlyAddedScore = 0;
+
+    private boolean gameOver = false;
+
+    // the seed of the current game and the generator seeded with it
+    private long seed;
+    private RandomGenerator random;
+    // number of BlockCombos of the game's sequence handed out so far
+    // (BlockCombos of undone rounds are not counted until handed out again)
+    private long generatedCombos = 0;
+
+    // Zobrist hashes of the BlockCombos in their slots and of the counters
+    private long slotsHash = 0;
+    private long countersHash = 0;
+
+    private final MoveJournal journal = new MoveJournal();
+    // BlockCombos of undone rounds, used before new ones are created
+    private final Deque<BlockCombo> returnedCombos = new ArrayDeque<>();
+
+    // notified after every change of the saved state, null if none
+    private IntConsumer changeListener = null;
+
+    GameEngine() {
+        this(createSeed());
+    }
+
+    GameEngine(long gameSeed) {
+        for (int i = 0; i < NUMBER_OF_OPEN_SLOTS; i++) {
+            openBlockCombos[i] = new SingleContainer<>();
+        }
+
+        seed = gameSeed;
+        random = new SplittableRandom(seed);
+        updateCountersHash();
+
+        // starts the game by creating the initial three BlockCombos
+        generateNewBlockCombos();
+    }
+
+    /**
+     * Creates a new seed for a game.
+     * @return the seed
+     */
+    static long createSeed() {
+        return ThreadLocalRandom.current().nextLong();
+    }
+
+    // ----------------------------------------------------------------------------------
+    // commands
+    // ----------------------------------------------------------------------------------
+
+    /**
+     * Starts a new game with a new seed. The highScore is kept.
+     */
+    void restart() {
+        restart(createSeed());
+    }
+
+    /**
+     * Starts a new game with given seed. The highScore is kept.
+     * @param gameSeed the seed for the BlockCombos of the new game
+     */
+    void restart(long gameSeed) {
+        seed = gameSeed;
+        random = new SplittableRandom(seed);
+        generatedCombos = 0;
+        journal.clear();
+        returnedCombos.clear();
+
+        rotations = initialRotations;
+        nextRotation = 0;
+        gameOver = false;
+        score = 0;
+        recentlyAddedScore = 0;
+
+        grid.clear();
+        for (int slot = 0; slot <= SAVED_SLOT; slot++) {
+            clearSlot(slot);
+        }
+        remainingRoundsForSavedCombo = maximumRemainingRoundsForSavedCombo;
+        updateCountersHash();
+
+        // generate initial BlockCombos
+        generateNewBlockCombos();
+        notifyChange(RESTARTED);
+    }
+
+    /**
+     * Restores the game state represented by the given savegame.
+     * @param savegame the Savegame representing the game state to be restored
+     */
+    void restore(Savegame savegame) {
+        rotations = savegame.getRotations();
+        nextRotation = savegame.getNextRotation();
+        gameOver = savegame.isGameOver();
+        highScore = savegame.getHighScore();
+        score = savegame.getScore();
+        recentlyAddedScore = 0;
+
+        // fill cells that are marked as filled in savegame's grid
+        grid.clear();
+        for (int x = 0; x < grid.getSize(); x++) {
+            for (int y = 0; y < grid.getSize(); y++) {
+                if (savegame.getGrid()[y][x]) {
+                    // cell at (x, y) shall be full
+                    grid.fillCell(x, y);
+                }
+            }
+        }
+
+        // restore openBlockCombos
+        for (int i = 0; i < openBlockCombos.length; i++) {
+            clearSlot(i);
+            if (savegame.getOpenCombos()[i].representsBlockCombo()) {
+                // container i shall contain a BlockCombo
+                storeInSlot(i, savegame.getOpenCombos()[i].restoreBlockCombo());
+            }
+        }
+
+        // restore savedBlockCombo
+        clearSlot(SAVED_SLOT);
+        if (savegame.getSavedCombo().representsBlockCombo()) {
+            // there shall be a saved BlockCombo
+            storeInSlot(SAVED_SLOT, savegame.getSavedCombo().restoreBlockCombo());
+        }
+        remainingRoundsForSavedCombo = savegame.getRemainingRoundsForSavedCombo();
+        updateCountersHash();
+
+        // continue the saved game's sequence of BlockCombos
+        journal.clear();
+        returnedCombos.clear();
+        seed = savegame.getSeed();
+        random = new SplittableRandom(seed);
+        for (long i = 0; i < savegame.getGeneratedCombos(); i++) {
+            BlockComboCreator.createRandomCombo(random);
+        }
+        generatedCombos = savegame.getGeneratedCombos();
+    }
+
+    /**
+     * Rotates the BlockCombo in given slot 90° to the right if the player has
+     * rotations available and the BlockCombo is rotatable.
+     * The rotation is only paid for when the BlockCombo is placed.
+     * @param slot the slot of the BlockCombo
+     * @return true if the BlockCombo gets rotated, false otherwise
+     */
+    boolean rotate(int slot) {
+        if (gameOver || rotations == 0 || getContainer(slot).isEmpty()) {
+            return false;
+        }
+        return getContainer(slot).getContent().tryRotate();
+    }
+
+    /**
+     * Rotates the BlockCombo in given slot back in its original formation.
+     * Does nothing if the slot is empty.
+     * @param slot the slot of the BlockCombo
+     */
+    void resetRotation(int slot) {
+        if (!getContainer(slot).isEmpty()) {
+            getContainer(slot).getContent().resetRotation();
+        }
+    }
+
+    /**
+     * Checks if the BlockCombo in given slot (in its current rotation)
+     * can be placed with its start block at (x, y).
+     * @param slot the slot of the BlockCombo
+     * @param x the x-position of the start block
+     * @param y the y-position of the start block
+     * @return true if the BlockCombo can be placed, false otherwise
+     */
+    boolean canPlace(int slot, int x, int y) {
+        if (gameOver || getContainer(slot).isEmpty()
+                || grid.positionOutOfBounds(x, y)) {
+            return false;
+        }
+        return grid.canInsertBlockCombo(grid.getCellAt(x, y),
+                getContainer(slot).getContent());
+    }
+
+    /**
+     * Checks if the BlockCombo in given slot, rotated the given number of times,
+     * can be placed with its start block at (x, y). The BlockCombo is not changed.
+     * @param slot the slot of the BlockCombo
+     * @param rotation the number of rotations by 90° to the right applied
+     *                 to the BlockCombo's original formation
+     * @param x the x-position of the start block
+     * @param y the y-position of the start block
+     * @return true if the BlockCombo can be placed, false otherwise
+     */
+    boolean canPlace(int slot, int rotation, int x, int y) {
+        if (gameOver || getContainer(slot).isEmpty()
+                || grid.positionOutOfBounds(x, y)) {
+            return false;
+        }
+        BlockCombo combo = getContainer(slot).getContent();
+        if (rotation % combo.getShape().getSymmetryOrder() != 0 && rotations == 0) {
+            // player cannot pay for the rotation
+            return false;
+        }
+        return grid.canInsertComboShape(combo.getShape(),
+                combo.getReachableRotation(rotation - combo.getRotationSteps()),
+                Grid.cellIndex(x, y));
+    }
+
+    /**
+     * Places the BlockCombo in given slot, rotated the given number of times,
+     * with its start block at (x, y). See place(slot, x, y).
+     * @param slot the slot of the BlockCombo
+     * @param rotation the number of rotations by 90° to the right applied
+     *                 to the BlockCombo's original formation
+     * @param x the x-position of the start block
+     * @param y the y-position of the start block
+     * @return true if the BlockCombo has been placed, false if the move is illegal
+     */
+    boolean place(int slot, int rotation, int x, int y) {
+        if (gameOver || getContainer(slot).isEmpty()) {
+            return false;
+        }
+        BlockCombo combo = getContainer(slot).getContent();
+        int previousSteps = combo.getRotationSteps();
+        combo.setRotationSteps(rotation);
+        if (combo.isRotated() && rotations == 0) {
+            // player cannot pay for the rotation
+            combo.setRotationSteps(previousSteps);
+            return false;
+        }
+        if (!place(slot, x, y)) {
+            combo.setRotationSteps(previousSteps);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Places the BlockCombo in given slot (in its current rotation) with its
+     * start block at (x, y). Full rows and columns are cleared and scored,
+     * the BlockCombo is removed from its slot and one rotation is consumed if
+     * the BlockCombo was rotated. Afterwards the next round is started if
+     * necessary and the game is checked for game over.
+     * @param slot the slot of the BlockCombo
+     * @param x the x-position of the start block
+     * @param y the y-position of the start block
+     * @return true if the BlockCombo has been placed, false if the move is illegal
+     */
+    boolean place(int slot, int x, int y) {
+        if (!canPlace(slot, x, y)) {
+            return false;
+        }
+        BlockCombo combo = getContainer(slot).getContent();
+        int move = MoveGenerator.encodePlacement(slot, combo.getRotationSteps(),
+                                                 Grid.cellIndex(x, y));
+        long countersRecord = MoveJournal.encodeCounters(rotations, nextRotation);
+        int previousRemainingRounds = remainingRoundsForSavedCombo;
+        long previousGeneratedCombos = generatedCombos;
+
+        // insert BlockCombo in Grid and score cleared rows and columns
+        grid.insertBlockCombo(grid.getCellAt(x, y), combo);
+        int clearedRows = grid.getLastClearedRows();
+        int clearedColumns = grid.getLastClearedColumns();
+        if (clearedRows != 0 || clearedColumns != 0) {
+            updateScore(clearedRows, clearedColumns);
+        }
+
+        // remove BlockCombo from its slot
+        clearSlot(slot);
+        updateCountersHash();
+
+        // consume one rotation if BlockCombo was rotated
+        if (combo.isRotated()) {
+            consumeRotation();
+        }
+
+        // start next round if necessary and check for game over
+        tryNextRound();
+
+        journal.record(MoveJournal.encodeMove(move, combo, clearedRows, clearedColumns,
+                        generatedCombos != previousGeneratedCombos, previousRemainingRounds),
+                countersRecord);
+        notifyChange(move);
+        return true;
+    }
+
+    /**
+     * Saves the open BlockCombo in given slot by moving it to the saved slot.
+     * The saved BlockCombo must be used within maximumRemainingRoundsForSavedCombo
+     * rounds. Starts next round if no open BlockCombos remain.
+     * Does nothing if a BlockCombo is already saved.
+     * @param slot the slot of the open BlockCombo (0..2)
+     * @return true if the BlockCombo has been saved, false otherwise
+     */
+    boolean save(int slot) {
+        if (gameOver || slot < 0 || slot >= NUMBER_OF_OPEN_SLOTS
+                || openBlockCombos[slot].isEmpty() || !savedBlockCombo.isEmpty()) {
+            return false;
+        }
+
+        long countersRecord = MoveJournal.encodeCounters(rotations, nextRotation);
+        int previousRemainingRounds = remainingRoundsForSavedCombo;
+        long previousGeneratedCombos = generatedCombos;
+
+        // save BlockCombo and reset its rotation
+        BlockCombo combo = openBlockCombos[slot].getContent();
+        combo.resetRotation();
+        clearSlot(slot);
+        storeInSlot(SAVED_SLOT, combo);
+        remainingRoundsForSavedCombo = maximumRemainingRoundsForSavedCombo;
+        updateCountersHash();
+
+        // start next round if necessary
+        tryNextRound();
+
+        journal.record(MoveJournal.encodeMove(MoveGenerator.encodeSave(slot), combo, 0, 0,
+                        generatedCombos != previousGeneratedCombos, previousRemainingRounds),
+                countersRecord);
+        notifyChange(MoveGenerator.encodeSave(slot));
+        return true;
+    }
+
+    /**
+     * Undoes the last move: its BlockCombo goes back to its slot, the cleared
+     * rows and columns are refilled and the score and the counters are restored.
+     * If the move started a new round, its BlockCombos are kept for the next round.
+     * The highScore is not changed.
+     * @return true if a move has been undone, false if there is no move to undo
+     */
+    boolean undo() {
+        if (!journal.canUndo()) {
+            return false;
+        }
+        long moveRecord = journal.getLastMoveRecord();
+        long countersRecord = journal.getLastCountersRecord();
+        journal.stepBack();
+
+        if (MoveJournal.startedNewRound(moveRecord)) {
+            // return the BlockCombos of the new round in their order
+            for (int i = NUMBER_OF_OPEN_SLOTS - 1; i >= 0; i--) {
+                BlockCombo combo = openBlockCombos[i].getContent();
+                combo.resetRotation();
+                returnedCombos.addFirst(combo);
+                clearSlot(i);
+            }
+            generatedCombos -= NUMBER_OF_OPEN_SLOTS;
+        }
+
+        int move = MoveJournal.getMove(moveRecord);
+        int slot = MoveGenerator.getSlot(move);
+        BlockCombo combo = new BlockCombo(MoveJournal.getShape(moveRecord),
+                                          MoveJournal.getOriginalRotation(moveRecord));
+        if (MoveGenerator.isSave(move)) {
+            clearSlot(SAVED_SLOT);
+        }
+        else {
+            // remove the BlockCombo's blocks and refill the cleared rows and columns
+            int clearedRows = MoveJournal.getClearedRows(moveRecord);
+            int clearedColumns = MoveJournal.getClearedColumns(moveRecord);
+            int rotation = combo.getReachableRotation(MoveGenerator.getRotation(move));
+            int anchor = MoveGenerator.getAnchor(move);
+            grid.setOccupied(
+                    (grid.getOccupiedLow() | Grid.getLinesLow(clearedRows, clearedColumns))
+                            & ~combo.getShape().getAnchorMaskLow(rotation, anchor),
+                    (grid.getOccupiedHigh() | Grid.getLinesHigh(clearedRows, clearedColumns))
+                            & ~combo.getShape().getAnchorMaskHigh(rotation, anchor));
+            grid.clearRecentlyClearedCells();
+            score -= calculateScore(clearedRows, clearedColumns);
+        }
+        storeInSlot(slot, combo);
+
+        rotations = MoveJournal.getRotations(countersRecord);
+        nextRotation = MoveJournal.getNextRotation(countersRecord);
+        remainingRoundsForSavedCombo = MoveJournal.getRemainingRounds(moveRecord);
+        recentlyAddedScore = 0;
+        gameOver = false;
+        updateCountersHash();
+        notifyChange(UNDONE);
+        return true;
+    }
+
+    /**
+     * Redoes the last undone move.
+     * @return true if a move has been redone, false if there is no move to redo
+     */
+    boolean redo() {
+        if (!journal.canRedo()) {
+            return false;
+        }
+        return MoveGenerator.makeMove(this, MoveJournal.getMove(journal.getNextMoveRecord()));
+    }
+
+    /**
+     * Checks if a move can be undone.
+     * @return true if a move can be undone, false otherwise
+     */
+    boolean canUndo() {
+        return journal.canUndo();
+    }
+
+    /**
+     * Checks if a move can be redone.
+     * @return true if a move can be redone, false otherwise
+     */
+    boolean canRedo() {
+        return journal.canRedo();
+    }
+
+    /**
+     * Sets the listener that is notified after every change of the state
+     * that a Savegame contains: placing, saving, undoing and restarting.
+     * Rotating is not a change because Savegames contain the BlockCombos
+     * in their original formation.
+     * The listener receives the made move (see MoveGenerator, redone moves
+     * included), UNDONE or RESTARTED.
+     * @param listener the listener, null for none
+     */
+    void setChangeListener(IntConsumer listener) {
+        changeListener = listener;
+    }
+
+    /**
+     * Resets the recentlyAddedScore to 0.
+     */
+    void resetRecentlyAddedScore() {
+        recentlyAddedScore = 0;
+    }
+
+    // ----------------------------------------------------------------------------------
+    // rules
+    // ----------------------------------------------------------------------------------
+
+    /**
+     * Notifies the change listener, if any.
+     * @param change the made move, UNDONE or RESTARTED
+     */
+    private void notifyChange(int change) {
+        if (changeListener != null) {
+            changeListener.accept(change);
+        }
+    }
+
+    /**
+     * Generates randomly three new BlockCombos which the player must use next.
+     * This is considered as the start of a new round.
+     */
+    private void generateNewBlockCombos() {
+        for (int slot = 0; slot < NUMBER_OF_OPEN_SLOTS; slot++) {
+            BlockCombo combo = returnedCombos.isEmpty()
+                    ? BlockComboCreator.createRandomCombo(random) : returnedCombos.pollFirst();
+            storeInSlot(slot, combo);
+            generatedCombos += 1;
+        }
+
+        // if a BlockCombo is saved, then its remaining rounds to use are reduced by one
+        if (!savedBlockCombo.isEmpty()) {
+            remainingRoundsForSavedCombo -= 1;
+            updateCountersHash();
+        }
+    }
+
+    /**
+     * Stores given BlockCombo in given empty slot.
+     * @param slot the slot
+     * @param combo the BlockCombo
+     */
+    private void storeInSlot(int slot, BlockCombo combo) {
+        getContainer(slot).store(combo);
+        slotsHash ^= ZobristKeys.getComboKey(slot, combo);
+    }
+
+    /**
+     * Removes the BlockCombo from given slot. Does nothing if the slot is empty.
+     * @param slot the slot
+     */
+    private void clearSlot(int slot) {
+        SingleContainer<BlockCombo> container = getContainer(slot);
+        if (!container.isEmpty()) {
+            slotsHash ^= ZobristKeys.getComboKey(slot, container.getContent());
+            container.clear();
+        }
+    }
+
+    /**
+     * Updates the Zobrist hash of the rotation counters, the remaining rounds
+     * of the saved BlockCombo and the game over state.
+     */
+    private void updateCountersHash() {
+        countersHash = ZobristKeys.getRotationsKey(rotations, nextRotation);
+        if (!savedBlockCombo.isEmpty()) {
+            countersHash ^= ZobristKeys.getRemainingRoundsKey(remainingRoundsForSavedCombo);
+        }
+        if (gameOver) {
+            countersHash ^= ZobristKeys.GAME_OVER_KEY;
+        }
+    }
+
+    /**
+     * Starts next round of the game if current round is over, i.e. if
+     * player used all of its available BlockCombos.
+     * Next round results in three new BlockCombos becoming available.
+     * Checks for game over after BlockCombo generating.
+     */
+    private void tryNextRound() {
+        if (openBlockCombosIsEmpty() && !hasUrgentSavedCombo()) {
+            // start next round
+            generateNewBlockCombos();
+        }
+
+        // check for game over
+        tryGameOver();
+    }
+
+    /**
+     * Checks if the game is over and remembers if it is.
+     */
+    void tryGameOver() {
+        if (checkForGameOver()) {
+            gameOver = true;
+            updateCountersHash();
+        }
+    }
+
+    /**
+     * Checks if the game is over, i.e. if the player has BlockCombos available that must
+     * be used before the next round starts and no such BlockCombo can be inserted.
+     * @return true if the game is over, false otherwise
+     */
+    boolean checkForGameOver() {
+        if (openBlockCombosIsEmpty()) {
+            // no open BlockCombos
+            if (hasUrgentSavedCombo()) {
+                // there is a saved BlockCombo that must be used this round
+                if (!grid.canInsertBlockCombo(savedBlockCombo.getContent(),
+                        rotations > 0)) {
+                    // savedCombo cannot be inserted
+                    return true;
+                }
+            }
+            return false;
+        }
+        else {
+            // there is at least one open BlockCombo
+            for (SingleContainer<BlockCombo> container : openBlockCombos) {
+                if (!container.isEmpty()) {
+                    if (grid.canInsertBlockCombo(container.getContent(), rotations > 0)) {
+                        // BlockCombo in container can be inserted
+                        return false;
+                    }
+                }
+            }
+
+            // no open BlockCombo can be inserted
+
+            if (savedBlockCombo.isEmpty()) {
+                // no saved BlockCombo (-> one open BlockCombo could be saved)
+                // GAME OVER if there are multiple open BlockCombos
+                return getNumberOfOpenBlockCombos() > 1;
+            }
+            else {
+                // GAME OVER if saved BlockCombo cannot be inserted, too
+                return !grid.canInsertBlockCombo(savedBlockCombo.getContent(),
+                        rotations > 0);
+            }
+        }
+    }
+
+    /**
+     * Increases the number of available rotations by one.
+     */
+    private void addRotation() {
+        rotations += 1;
+        updateCountersHash();
+    }
+
+    /**
+     * Updates nextRotation depending on the number of recently cleared rows and columns.
+     * If nextRotation reaches 100, the player gets a new rotation.
+     * @param clearedRowsAndColumns the number of recently cleared rows and columns
+     */
+    void updateNextRotation(int clearedRowsAndColumns) {
+        // nextRotation increases if player cleared at least two rows and columns
+        nextRotation += (clearedRowsAndColumns - 1) * 20;
+
+        // add rotation if necessary
+        while (nextRotation >= 100) {
+            addRotation();
+            nextRotation -= 100;
+        }
+        // now: nextRotation < 100
+        updateCountersHash();
+    }
+
+    /**
+     * Decreases the number of available rotations by one.
+     * Throws IllegalStateException if no rotations are available.
+     */
+    private void consumeRotation() {
+        if (rotations == 0) {
+            throw new IllegalStateException(
+                    "useRotation() should not be called if rotations == 0.");
+        }
+        rotations -= 1;
+        updateCountersHash();
+    }
+
+    /**
+     * Updates the score of the current game depending on how many cells and
+     * rows/columns have just been cleared.
+     * scoreToAdd = 10 * numberOfClearedCells * numberOfClearedRowsAndColumns
+     * Unlocks new rotation if nextRotation exceeds 100
+     * @param clearedRows the bitmask of rows which have just been cleared
+     *                    (bit y set = row y cleared)
+     * @param clearedColumns the bitmask of columns which have just been cleared
+     *                       (bit x set = column x cleared)
+     */
+    void updateScore(int clearedRows, int clearedColumns) {
+        int numberOfClearedRowsAndColumns =
+                Integer.bitCount(clearedRows) + Integer.bitCount(clearedColumns);
+
+        // add rotation if necessary
+        updateNextRotation(numberOfClearedRowsAndColumns);
+
+        // increase the score
+        increaseScoreBy(calculateScore(clearedRows, clearedColumns));
+    }
+
+    /**
+     * Calculates the score for clearing given rows and columns.
+     * score = 10 * numberOfClearedCells * numberOfClearedRowsAndColumns
+     * @param clearedRows the bitmask of cleared rows (bit y set = row y cleared)
+     * @param clearedColumns the bitmask of cleared columns (bit x set = column x cleared)
+     * @return the score
+     */
+    static int calculateScore(int clearedRows, int clearedColumns) {
+        int numberOfClearedRows = Integer.bitCount(clearedRows);
+        int numberOfClearedColumns = Integer.bitCount(clearedColumns);
+
+        int numberOfClearedRowsAndColumns = numberOfClearedRows + numberOfClearedColumns;
+        int numberOfClearedCells =
+                Grid.SIZE * numberOfClearedRows
+                        + (Grid.SIZE - numberOfClearedRows) * numberOfClearedColumns;
+
+        return 10 * numberOfClearedCells * numberOfClearedRowsAndColumns;
+    }
+
+    /**
+     * Increases the score by given number.
+     * If score is afterwards larger than highScore, highScore is set to score.
+     * @param number the number added to the score
+     */
+    private void increaseScoreBy(int number) {
+        score += number;
+        recentlyAddedScore = number;
+
+        if (score > highScore) {
+            highScore = score;
+        }
+    }
+
+    // ----------------------------------------------------------------------------------
+    // getter for the game state
+    // ----------------------------------------------------------------------------------
+
+    /**
+     * Gets the Grid of the game.
+     * @return the grid
+     */
+    Grid getGrid() {
+        return grid;
+    }
+
+    /**
+     * Gets the SingleContainer for the given slot.
+     * Throws IllegalArgumentException if the slot does not exist.
+     * @param slot 0/1/2 for the open BlockCombos, SAVED_SLOT for the saved BlockCombo
+     * @return the SingleContainer
+     */
+    SingleContainer<BlockCombo> getContainer(int slot) {
+        if (slot >= 0 && slot < NUMBER_OF_OPEN_SLOTS) {
+            return openBlockCombos[slot];
+        }
+        else if (slot == SAVED_SLOT) {
+            return savedBlockCombo;
+        }
+        throw new IllegalArgumentException("There is no slot " + slot + ".");
+    }
+
+    /**
+     * Gets the array with all SingleContainer for open BlockCombos.
+     * @return the openBlockCombos
+     */
+    SingleContainer<BlockCombo>[] getOpenBlockCombos() {
+        return openBlockCombos;
+    }
+
+    /**
+     * Gets the SingleContainer for saved BlockCombos.
+     * @return the savedBlockCombo
+     */
+    SingleContainer<BlockCombo> getSavedBlockCombo() {
+        return savedBlockCombo;
+    }
+
+    /**
+     * Gets the number of open BlockCombos.
+     * @return the number of non-empty SingleContainer in openBlockCombos.
+     */
+    int getNumberOfOpenBlockCombos() {
+        int numberOfOpenCombos = 0;
+
+        for (SingleContainer<BlockCombo> container : openBlockCombos) {
+            if (!container.isEmpty()) {
+                numberOfOpenCombos += 1;
+            }
+        }
+
+        return numberOfOpenCombos;
+    }
+
+    /**
+     * Checks if player has any available (open) BlockCombos remaining.
+     * @return true if all SingleContainers of openBlockCombos is empty,
+     * false otherwise
+     */
+    boolean openBlockCombosIsEmpty() {
+        return getNumberOfOpenBlockCombos() == 0;
+    }
+
+    /**
+     * Checks if player saved previously a BlockCombo which must be used in this round.
+     * @return true if there is a saved BlockCombo with 0 remaining rounds to use
+     */
+    boolean hasUrgentSavedCombo() {
+        return !savedBlockCombo.isEmpty() && remainingRoundsForSavedCombo == 0;
+    }
+
+    /**
+     * Gets the number of remaining rounds until the saved BlockCombo must be used.
+     * @return the remainingRoundsForSavedCombo
+     */
+    int getRemainingRoundsForSavedCombo() {
+        return remainingRoundsForSavedCombo;
+    }
+
+    /**
+     * Gets the number of rounds a newly saved BlockCombo can be kept.
+     * @return the maximumRemainingRoundsForSavedCombo
+     */
+    int getMaximumRemainingRoundsForSavedCombo() {
+        return maximumRemainingRoundsForSavedCombo;
+    }
+
+    /**
+     * Gets the number of rotations.
+     * @return the rotations
+     */
+    int getRotations() {
+        return rotations;
+    }
+
+    /**
+     * Gets nextRotation.
+     * @return nextRotation
+     */
+    int getNextRotation() {
+        return nextRotation;
+    }
+
+    /**
+     * Gets the highScore.
+     * @return the highScore
+     */
+    int getHighScore() {
+        return highScore;
+    }
+
+    /**
+     * Gets the current score.
+     * @return the score
+     */
+    int getScore() {
+        return score;
+    }
+
+    /**
+     * Gets the score added by the last scoring move.
+     * @return the recentlyAddedScore
+     */
+    int getRecentlyAddedScore() {
+        return recentlyAddedScore;
+    }
+
+    /**
+     * Gets the Zobrist hash of the game state: the non-empty cells, the BlockCombos
+     * in their slots (with their original formations), the remaining rounds of the
+     * saved BlockCombo, the rotation counters and the game over state.
+     * The current rotation of a BlockCombo is not part of the game state.
+     * Equal game states have equal hashes, also in different runs of the game.
+     * @return the hash
+     */
+    long getStateHash() {
+        return grid.getHash() ^ slotsHash ^ countersHash;
+    }
+
+    /**
+     * Gets the seed of the current game.
+     * @return the seed
+     */
+    long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Gets the number of BlockCombos handed out in the current game so far.
+     * The sequence of BlockCombos continues after this many BlockCombos.
+     * @return the generatedCombos
+     */
+    long getGeneratedCombos() {
+        return generatedCombos;
+    }
+
+    /**
+     * Checks if the game was declared as over.
+     * @return true if game is over, false otherwise
+     */
+    boolean isGameOver() {
+        return gameOver;
+    }
+
+}
@@ -2,29 +2,46 @@ package blockpuzzle;
 
 import javax.swing.*;
 import java.awt.*;
-import java.util.List;
+import java.awt.event.ActionEvent;
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
+import java.io.File;
+import java.util.concurrent.*;
 
 /**
  * A GameManager is an extended JFrame responsible for managing and visualizing the game.
+ * The game state and rules are contained by its GameEngine, the panels only
+ * render the GameEngine's state.
  */
 public class GameManager extends JFrame {
-    private final ScorePanel scorePanel = new ScorePanel();
-    private final GridPanel gridPanel = new GridPanel(this);
-    private final BlockCombosPanel blockCombosPanel = new BlockCombosPanel(this);
+    // how long the exit waits for the last Savegame to be snapshotted and written
+    // and for the replay to be closed
+    private static final long EXIT_SAVE_TIMEOUT_MILLIS = 2000;
+    // minimum time between two autosaves, can be set by the system property
+    // blockpuzzle.autosaveInterval (milliseconds)
+    private static final int AUTOSAVE_INTERVAL_MILLIS = Integer.getInteger(
+            "blockpuzzle.autosaveInterval", AutosaveService.DEFAULT_INTERVAL_MILLIS);
+
+
+    private final GameEngine engine = new GameEngine();
+    private final ScorePanel scorePanel = new ScorePanel(engine);
+    private final GridPanel gridPanel = new GridPanel(this, engine);
+    private final BlockCombosPanel blockCombosPanel = new BlockCombosPanel(this, engine);
+    private final ReplayRecorder replayRecorder
+            = new ReplayRecorder(engine, new File("Replays"));
     private final MouseInteractionManager mouseInteractionManager
             = new MouseInteractionManager(
-                    this, scorePanel, gridPanel, blockCombosPanel);
+                    this, engine, scorePanel, gridPanel, blockCombosPanel, replayRecorder);
     private final SaveManager saveManager
-            = new SaveManager(this, scorePanel, gridPanel, blockCombosPanel);
-
-    // how many BlockCombos can the player rotate
-    private final int initialRotations = 3;
-    private int rotations = initialRotations;
-
-    // when nextRotation reaches 100, player gets a new rotation
-    private int nextRotation = 0;
-
-    private boolean gameOver = false;
+            = new SaveManager(this, engine);
+    private final AutosaveService autosaveService
+            = new AutosaveService(saveManager, AUTOSAVE_INTERVAL_MILLIS);
+    private final HintManager hintManager
+            = new HintManager(this, engine, gridPanel, blockCombosPanel);
+    // the save requested when the window is closed, null if it has not been closed
+    private volatile Future<?> exitSave = null;
 
     GameManager() {
         // set layout
@@ -41,6 +58,48 @@ public class GameManager extends JFrame {
         blockCombosPanel.addMouseListener(mouseInteractionManager);
         blockCombosPanel.addMouseMotionListener(mouseInteractionManager);
 
+        // every change of the game state is journaled and autosaved
+        engine.setChangeListener(change -> {
+            saveManager.recordChange(change);
+            autosaveService.markDirty();
+        });
+
+        // pressing H shows a hint for the next move
+        getRootPane().getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW)
+                .put(KeyStroke.getKeyStroke(KeyEvent.VK_H, 0), "showHint");
+        getRootPane().getActionMap().put("showHint", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                hintManager.requestHint();
+            }
+        });
+
+        // pressing Ctrl+Z undoes the last move, Ctrl+Y redoes it
+        getRootPane().getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW)
+                .put(KeyStroke.getKeyStroke(KeyEvent.VK_Z, InputEvent.CTRL_DOWN_MASK), "undo");
+        getRootPane().getActionMap().put("undo", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (engine.undo()) {
+                    replayRecorder.recordUndo();
+                    resetPanels();
+                    repaint();
+                }
+            }
+        });
+        getRootPane().getInputMap(JComponent.WHEN_IN_FOCUSED_WINDOW)
+                .put(KeyStroke.getKeyStroke(KeyEvent.VK_Y, InputEvent.CTRL_DOWN_MASK), "redo");
+        getRootPane().getActionMap().put("redo", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                if (engine.redo()) {
+                    replayRecorder.recordRedo();
+                    resetPanels();
+                    repaint();
+                }
+            }
+        });
+
         // set panel background colors
         Color backgroundColor = new Color(20, 20, 20);
         scorePanel.setBackground(backgroundColor);
@@ -55,131 +114,123 @@ public class GameManager extends JFrame {
         blockCombosPanel.setPreferredSize(new Dimension(300, 100));
         blockCombosPanel.setMaximumSize(new Dimension(300, 100));
 
+        // closing the window saves the game on the EDT before the JVM exits
+        addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowClosing(WindowEvent e) {
+                exitSave = saveGame();
+            }
+        });
+
         setResizable(false);
         setDefaultCloseOperation(WindowConstants.EXIT_ON_CLOSE);
         pack();
     }
 
     /**
-     * Saves the state of the current game.
+     * Saves the state of the current game in the background.
+     * Must be called on the EDT.
+     * @return a Future that is done when the Savegame has been written
      */
-    void saveGame() {
-        saveManager.saveGameState();
+    Future<?> saveGame() {
+        autosaveService.markClean();
+        return saveManager.saveGameState();
+    }
+
+    /**
+     * Waits briefly until the game state at exit has been written.
+     * If the application is not exited by closing the window (e.g. it is
+     * terminated by a signal), the game state is snapshotted on the EDT first.
+     */
+    void finishSaving() {
+        try {
+            Future<?> save = exitSave;
+            if (save == null) {
+                FutureTask<Future<?>> snapshot = new FutureTask<>(this::saveGame);
+                EventQueue.invokeLater(snapshot);
+                save = snapshot.get(EXIT_SAVE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            }
+            save.get(EXIT_SAVE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException | TimeoutException e) {
+            System.err.println("The Savegame could not be written before exit.");
+            e.printStackTrace();
+        }
     }
 
     /**
      * Restores the state of a previously saved game if a savegame file exists.
+     * The replay of the restored game is continued, otherwise a new replay is started.
+     * The restored or new game is saved at once, so the journal continues it.
+     * Must be called on the EDT.
      */
     void restoreGame() {
         Savegame savegame = saveManager.loadSavegame();
         if (savegame != null) {
             // a Savegame has been loaded -> restore saved game state
             saveManager.restoreGameState(savegame);
+            replayRecorder.continueGame();
+        }
+        else {
+            replayRecorder.startGame();
         }
+        saveGame();
     }
 
     /**
      * Starts a new game.
      */
     void restart() {
-        rotations = initialRotations;
-        nextRotation = 0;
-        gameOver = false;
-
-        // reset Panels
-        scorePanel.reset();
-        gridPanel.reset();
-        blockCombosPanel.reset();
-
-        // generate initial BlockCombos
-        blockCombosPanel.generateNewBlockCombos();
+        engine.restart();
+        replayRecorder.startGame();
+        resetPanels();
     }
 
     /**
-     * Restores the GameManager based on the game
-     * state represented by the given savegame.
-     * @param savegame the Savegame representing the game state to be restored
+     * Closes the replay of the current game and waits briefly until all of
+     * its records have been written.
      */
-    void restoreGameManager(Savegame savegame) {
-        rotations = savegame.getRotations();
-        nextRotation = savegame.getNextRotation();
-        gameOver = savegame.isGameOver();
+    void closeReplay() {
+        try {
+            replayRecorder.close().get(EXIT_SAVE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (ExecutionException | TimeoutException e) {
+            System.err.println("The replay could not be closed before exit.");
+            e.printStackTrace();
+        }
     }
 
     /**
-     * Starts next round of the game if current round is over, i.e. if
-     * player used all of its available BlockCombos.
-     * Next round results in three new BlockCombos becoming available.
-     * Checks for game over after BlockCombo generating.
+     * Resets the selection and highlighting state of all panels.
      */
-    void tryNextRound() {
-        if (blockCombosPanel.openBlockCombosIsEmpty()
-                && !blockCombosPanel.hasUrgentSavedCombo()) {
-            // start next round
-            blockCombosPanel.generateNewBlockCombos();
-            repaint();
-        }
-
-        // check for game over
-        tryGameOver();
+    void resetPanels() {
+        gridPanel.reset();
+        blockCombosPanel.reset();
     }
 
     /**
-     * Checks if the game is over and remembers if it is.
+     * Gets the GameEngine containing the game state.
+     * @return the engine
      */
-    void tryGameOver() {
-        if (checkForGameOver()) {
-            gameOver = true;
-        }
+    GameEngine getEngine() {
+        return engine;
     }
 
     /**
-     * Checks if the game is over, i.e. if the player has BlockCombos available that must
-     * be used before the next round starts and no such BlockCombo can be inserted.
-     * @return true if the game is over, false otherwise
+     * Gets the BlockCombo currently selected in the BlockCombosPanel.
+     * @return the selected BlockCombo, or null if no BlockCombo is selected
      */
-    private boolean checkForGameOver() {
-        SingleContainer<BlockCombo>[] openCombos = blockCombosPanel.getOpenBlockCombos();
-        SingleContainer<BlockCombo> savedCombo = blockCombosPanel.getSavedBlockCombo();
-
-        if (blockCombosPanel.openBlockCombosIsEmpty()) {
-            // no open BlockCombos
-            if (!savedCombo.isEmpty()
-                    && blockCombosPanel.getRemainingRoundsForSavedCombo() == 0) {
-                // there is a saved BlockCombo that must be used this round
-                if (!gridPanel.getGrid().canInsertBlockCombo(savedCombo.getContent(),
-                        rotations > 0)) {
-                    // savedCombo cannot be inserted
-                    return true;
-                }
-            }
-            return false;
-        }
-        else {
-            // there is at least one open BlockCombo
-            for (SingleContainer<BlockCombo> container : openCombos) {
-                if (!container.isEmpty()) {
-                    if (gridPanel.getGrid().canInsertBlockCombo(
-                            container.getContent(), rotations > 0)) {
-                        // BlockCombo in container can be inserted
-                        return false;
-                    }
-                }
-            }
-
-            // no open BlockCombo can be inserted
-
-            if (savedCombo.isEmpty()) {
-                // no saved BlockCombo (-> one open BlockCombo could be saved)
-                // GAME OVER if there are multiple open BlockCombos
-                return blockCombosPanel.getNumberOfOpenBlockCombos() > 1;
-            }
-            else {
-                // GAME OVER if saved BlockCombo cannot be inserted, too
-                return !gridPanel.getGrid().canInsertBlockCombo(savedCombo.getContent(),
-                        rotations > 0);
-            }
+    BlockCombo getSelectedBlockCombo() {
+        if (!blockCombosPanel.isAnyBlockComboSelected()) {
+            return null;
         }
+        return blockCombosPanel.getSelectedBlockCombo();
     }
 
     /**
@@ -187,7 +238,7 @@ public class GameManager extends JFrame {
      * @return true if game is over, false otherwise
      */
     boolean isGameOver() {
-        return gameOver;
+        return engine.isGameOver();
     }
 
     /**
@@ -195,7 +246,7 @@ public class GameManager extends JFrame {
      * @return the rotations
      */
     int getRotations() {
-        return rotations;
+        return engine.getRotations();
     }
 
     /**
@@ -203,68 +254,7 @@ public class GameManager extends JFrame {
      * @return nextRotation
      */
     int getNextRotation() {
-        return nextRotation;
-    }
-
-    /**
-     * Increases the number of available rotations by one.
-     */
-    void addRotation() {
-        rotations += 1;
-    }
-
-    /**
-     * Updates nextRotation depending on the number of recently cleared rows and columns.
-     * If nextRotation reaches 100, the player gets a new rotation.
-     * @param clearedRowsAndColumns the number of recently cleared rows and columns
-     */
-    void updateNextRotation(int clearedRowsAndColumns) {
-        // nextRotation increases if player cleared at least two rows and columns
-        nextRotation += (clearedRowsAndColumns - 1) * 20;
-
-        // add rotation if necessary
-        while (nextRotation >= 100) {
-            addRotation();
-            nextRotation -= 100;
-        }
-        // now: nextRotation < 100
-    }
-
-    /**
-     * Decreases the number of available rotations by one.
-     * Throws IllegalStateException if no rotations are available.
-     */
-    void consumeRotation() {
-        if (rotations == 0) {
-            throw new IllegalStateException(
-                    "useRotation() should not be called if rotations == 0.");
-        }
-        rotations -= 1;
-    }
-
-    /**
-     * Updates the score of the current game depending on how many cells and
-     * rows/columns have just been cleared.
-     * scoreToAdd = 10 * numberOfClearedCells * numberOfClearedRowsAndColumns
-     * Unlocks new rotation if nextRotation exceeds 100
-     * @param clearedRows the list of rows which have just been cleared
-     * @param clearedColumns the list of columns which have just been cleared
-     */
-    void updateScore(List<Integer> clearedRows, List<Integer> clearedColumns) {
-        int gridSize = gridPanel.getGrid().getSize();
-
-        int numberOfClearedRowsAndColumns = clearedRows.size() + clearedColumns.size();
-        int numberOfClearedCells =
-                gridSize * clearedRows.size()
-                        + (gridSize - clearedRows.size()) * clearedColumns.size();
-
-        int scoreToAdd = 10 * numberOfClearedCells * numberOfClearedRowsAndColumns;
-
-        // add rotation if necessary
-        updateNextRotation(numberOfClearedRowsAndColumns);
-
-        // increase the score
-        scorePanel.increaseScoreBy(scoreToAdd);
+        return engine.getNextRotation();
     }
 
 
@@ -276,15 +266,16 @@ public class GameManager extends JFrame {
         gameManager.setVisible(true);
 
         // try loading and restoring savegame
-        gameManager.restoreGame();
+        EventQueue.invokeLater(gameManager::restoreGame);
 
         // before application exit
         Runtime.getRuntime().addShutdownHook(new Thread()
         {
             public void run()
             {
-                // save current game state
-                gameManager.saveGame();
+                // wait for the current game state to be saved
+                gameManager.finishSaving();
+                gameManager.closeReplay();
             }
         });
 
@@ -0,0 +1,64 @@
+package blockpuzzle;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * A GreedyMovePolicy makes the placement that clears the most rows and columns.
+ * Rotated placements are only preferred if they clear more rows and columns,
+ * because they cost a rotation. Ties are broken randomly.
+ * A BlockCombo is only saved if no placement is possible.
+ */
+public class GreedyMovePolicy implements MovePolicy {
+    // legal moves of the current turn, see MoveGenerator
+    private final int[] moves = new int[MoveGenerator.MAXIMUM_MOVES];
+
+    @Override
+    public boolean makeMove(GameEngine engine, RandomGenerator random) {
+        int numberOfMoves = MoveGenerator.generateMoves(engine, moves);
+        Grid grid = engine.getGrid();
+
+        int bestValue = Integer.MIN_VALUE;
+        int bestMove = -1;
+        int firstSave = -1;
+        int numberOfBestMoves = 0;
+
+        for (int i = 0; i < numberOfMoves; i++) {
+            int move = moves[i];
+            if (MoveGenerator.isSave(move)) {
+                if (firstSave == -1) {
+                    firstSave = move;
+                }
+                continue;
+            }
+            BlockCombo combo = engine.getContainer(MoveGenerator.getSlot(move)).getContent();
+            ComboShape shape = combo.getShape();
+            int rotation = MoveGenerator.getRotation(move);
+            int shapeRotation = (combo.getOriginalRotation() + rotation)
+                    % ComboShape.NUMBER_OF_ROTATIONS;
+            int anchor = MoveGenerator.getAnchor(move);
+
+            // rows and columns are worth much more than the rotation costs
+            int value = 2 * grid.countFullRowsAndColumnsAfterInsert(
+                    shape, shapeRotation, anchor) - (rotation != 0 ? 1 : 0);
+
+            if (value > bestValue) {
+                bestValue = value;
+                numberOfBestMoves = 0;
+            }
+            if (value == bestValue) {
+                // reservoir sampling: each best move is chosen with equal chance
+                numberOfBestMoves += 1;
+                if (random.nextInt(numberOfBestMoves) == 0) {
+                    bestMove = move;
+                }
+            }
+        }
+
+        if (bestMove != -1) {
+            return MoveGenerator.makeMove(engine, bestMove);
+        }
+        // no placement possible -> try to save an open BlockCombo
+        return firstSave != -1 && MoveGenerator.makeMove(engine, firstSave);
+    }
+
+}
@@ -1,39 +1,89 @@
 package blockpuzzle;
 
-import java.util.ArrayList;
-import java.util.List;
-
 /**
  * A Grid is a play field for the game consisting of GridCells.
+ *
+ * The state of all cells is stored in a bitboard of two longs: the cell at
+ * (x, y) is represented by bit index = y * size + x, where the indices 0..63
+ * live in occupiedLow and the indices 64..80 live in occupiedHigh.
+ * A set bit means that the cell is NOT empty. The GridCells are only thin
+ * views on this bitboard.
+ *
+ * The Grid keeps the Zobrist hash of its non-empty cells up to date
+ * with every change, see ZobristKeys.
  */
 public class Grid {
-    private final GameManager gameManager;
-    private final int size = 9;
+    static final int SIZE = 9;
+
+    // bitboard masks for each row and column of the Grid
+    private static final long[] rowMasksLow = new long[SIZE];
+    private static final long[] rowMasksHigh = new long[SIZE];
+    private static final long[] columnMasksLow = new long[SIZE];
+    private static final long[] columnMasksHigh = new long[SIZE];
+
+    static {
+        for (int x = 0; x < SIZE; x++) {
+            for (int y = 0; y < SIZE; y++) {
+                int index = cellIndex(x, y);
+                if (index < 64) {
+                    rowMasksLow[y] |= 1L << index;
+                    columnMasksLow[x] |= 1L << index;
+                }
+                else {
+                    rowMasksHigh[y] |= 1L << (index - 64);
+                    columnMasksHigh[x] |= 1L << (index - 64);
+                }
+            }
+        }
+    }
+
     private final GridCell[][] cells;
-    private final List<GridCell> recentlyClearedCells = new ArrayList<>();
     private int recentlyClearedTimer = 0;
 
-    Grid(GameManager manager) {
-        gameManager = manager;
-        cells = new GridCell[size][size];
+    // the bitboard, a set bit represents a non-empty cell
+    private long occupiedLow = 0;
+    private long occupiedHigh = 0;
+    // Zobrist hash of the non-empty cells
+    private long hash = 0;
+
+    // bitboard of the recently cleared cells
+    private long recentlyClearedLow = 0;
+    private long recentlyClearedHigh = 0;
 
-        // fill Grid with GridCells
-        for (int x = 0; x < size; x++) {
-            for (int y = 0; y < size; y++) {
-                cells[y][x] = new GridCell(x, y);
+    // rows and columns cleared by the last insertion (bit i set = row/column i)
+    private int lastClearedRows = 0;
+    private int lastClearedColumns = 0;
+
+    private final PlaceabilityIndex placeabilityIndex = new PlaceabilityIndex(this);
+
+    Grid() {
+        cells = new GridCell[SIZE][SIZE];
+
+        // create GridCell views for the bitboard
+        for (int x = 0; x < SIZE; x++) {
+            for (int y = 0; y < SIZE; y++) {
+                cells[y][x] = new GridCell(this, x, y);
             }
         }
     }
 
+    /**
+     * Gets the bitboard index of the cell at given position.
+     * @param x the x-position of the cell
+     * @param y the y-position of the cell
+     * @return the bit index of the cell
+     */
+    static int cellIndex(int x, int y) {
+        return y * SIZE + x;
+    }
+
     /**
      * Clears all GridCells of this Grid.
      */
     void clear() {
-      for (int x = 0; x < size; x++) {
-          for (int y = 0; y < size; y++) {
-              cells[y][x].clear();
-          }
-      }
+        occupiedLow = 0;
+        occupiedHigh = 0;
+        hash = 0;
     }
 
     /**
@@ -41,7 +91,7 @@ public class Grid {
      * @return the size
      */
     int getSize() {
-        return size;
+        return SIZE;
     }
 
     /**
@@ -63,11 +113,118 @@ public class Grid {
     }
 
     /**
-     * Gets the list of recentlyClearedCells.
-     * @return the recentlyClearedCells
+     * Gets the lower word of the bitboard (cell indices 0..63).
+     * @return occupiedLow
      */
-    List<GridCell> getRecentlyClearedCells() {
-        return recentlyClearedCells;
+    long getOccupiedLow() {
+        return occupiedLow;
+    }
+
+    /**
+     * Gets the higher word of the bitboard (cell indices 64..80).
+     * @return occupiedHigh
+     */
+    long getOccupiedHigh() {
+        return occupiedHigh;
+    }
+
+    /**
+     * Replaces the whole bitboard of this Grid.
+     * @param low the non-empty cells with indices 0..63
+     * @param high the non-empty cells with indices 64..80
+     */
+    void setOccupied(long low, long high) {
+        occupiedLow = low;
+        occupiedHigh = high;
+        hash = ZobristKeys.hashCells(low, high);
+    }
+
+    /**
+     * Gets the Zobrist hash of the non-empty cells.
+     * @return the hash
+     */
+    long getHash() {
+        return hash;
+    }
+
+    /**
+     * Checks whether the cell at given position is empty or not.
+     * @param x the x-position of the cell
+     * @param y the y-position of the cell
+     * @return true if the cell is empty, false otherwise
+     */
+    boolean isCellEmpty(int x, int y) {
+        int index = cellIndex(x, y);
+        if (index < 64) {
+            return (occupiedLow & (1L << index)) == 0;
+        }
+        return (occupiedHigh & (1L << (index - 64))) == 0;
+    }
+
+    /**
+     * Fills the cell at given position.
+     * Throws IllegalStateException if the cell is not empty.
+     * @param x the x-position of the cell
+     * @param y the y-position of the cell
+     */
+    void fillCell(int x, int y) {
+        if (!isCellEmpty(x, y)) {
+            throw new IllegalStateException("fill() must not be called " +
+                    "when GridCell is not empty.");
+        }
+        int index = cellIndex(x, y);
+        if (index < 64) {
+            occupiedLow |= 1L << index;
+            hash ^= ZobristKeys.hashCells(1L << index, 0);
+        }
+        else {
+            occupiedHigh |= 1L << (index - 64);
+            hash ^= ZobristKeys.hashCells(0, 1L << (index - 64));
+        }
+    }
+
+    /**
+     * Clears the cell at given position.
+     * @param x the x-position of the cell
+     * @param y the y-position of the cell
+     */
+    void clearCell(int x, int y) {
+        if (isCellEmpty(x, y)) {
+            return;
+        }
+        int index = cellIndex(x, y);
+        if (index < 64) {
+            occupiedLow &= ~(1L << index);
+            hash ^= ZobristKeys.hashCells(1L << index, 0);
+        }
+        else {
+            occupiedHigh &= ~(1L << (index - 64));
+            hash ^= ZobristKeys.hashCells(0, 1L << (index - 64));
+        }
+    }
+
+    /**
+     * Checks if any cells have been recently cleared.
+     * @return true if the bitboard of recently cleared cells is not empty
+     */
+    boolean hasRecentlyClearedCells() {
+        return recentlyClearedLow != 0 || recentlyClearedHigh != 0;
+    }
+
+    /**
+     * Gets the lower word of the bitboard of recently cleared cells.
+     * @return recentlyClearedLow
+     */
+    long getRecentlyClearedLow() {
+        return recentlyClearedLow;
+    }
+
+    /**
+     * Gets the higher word of the bitboard of recently cleared cells.
+     * @return recentlyClearedHigh
+     */
+    long getRecentlyClearedHigh() {
+        return recentlyClearedHigh;
     }
 
     /**
@@ -86,118 +243,155 @@ public class Grid {
     }
 
     /**
-     * Clears the list of recentlyClearedCells.
+     * Clears the bitboard of recently cleared cells.
      */
     void clearRecentlyClearedCells() {
-        recentlyClearedCells.clear();
+        recentlyClearedLow = 0;
+        recentlyClearedHigh = 0;
+    }
+
+    /**
+     * Gets the rows cleared by the last call of clearFullRowsAndColumns().
+     * @return the bitmask of cleared rows (bit y set = row y cleared)
+     */
+    int getLastClearedRows() {
+        return lastClearedRows;
+    }
+
+    /**
+     * Gets the columns cleared by the last call of clearFullRowsAndColumns().
+     * @return the bitmask of cleared columns (bit x set = column x cleared)
+     */
+    int getLastClearedColumns() {
+        return lastClearedColumns;
     }
 
     /**
      * Identifies all rows and columns of the Grid whose
      * GridCells are all full and clears them.
+     * The full rows and columns are remembered as bitmasks
+     * (bit y set = row y cleared, bit x set = column x cleared),
+     * see getLastClearedRows() and getLastClearedColumns().
      */
     void clearFullRowsAndColumns() {
-        List<Integer> fullRows = new ArrayList<>();
-        List<Integer> fullColumns = new ArrayList<>();
-
-        // find full rows
-        for (int y = 0; y < size; y++) {
-            boolean rowYFull = true;
-            for (int x = 0; x < size; x++) {
-                if (cells[y][x].isEmpty()) {
-                    // empty cell found
-                    rowYFull = false;
-                    break;
-                }
-            }
-            if (rowYFull) {
-                // row y is full
-                fullRows.add(y);
-            }
-        }
+        int fullRows = findFullRows(occupiedLow, occupiedHigh);
+        int fullColumns = findFullColumns(occupiedLow, occupiedHigh);
 
-        // find full columns
-        for (int x = 0; x < size; x++) {
-            boolean columnXFull = true;
-            for (int y = 0; y < size; y++) {
-                if (cells[y][x].isEmpty()) {
-                    // empty cell found
-                    columnXFull = false;
-                    break;
-                }
-            }
-            if (columnXFull) {
-                // column x is full
-                fullColumns.add(x);
-            }
-        }
-
-        // clear full rows
-        for (Integer row : fullRows) {
-            clearRow(row);
-        }
+        lastClearedRows = fullRows;
+        lastClearedColumns = fullColumns;
 
-        // clear full columns
-        for (Integer column : fullColumns) {
-            clearColumn(column);
-        }
+        if (fullRows != 0 || fullColumns != 0) {
+            // clear full rows and columns
+            long clearedLow = getLinesLow(fullRows, fullColumns);
+            long clearedHigh = getLinesHigh(fullRows, fullColumns);
+            occupiedLow &= ~clearedLow;
+            occupiedHigh &= ~clearedHigh;
+            hash ^= ZobristKeys.hashCells(clearedLow, clearedHigh);
 
-        if (!fullRows.isEmpty() || !fullColumns.isEmpty()) {
             // remember that cells have just been cleared
+            recentlyClearedLow |= clearedLow;
+            recentlyClearedHigh |= clearedHigh;
             recentlyClearedTimer = 4;
-
-            // update score
-            gameManager.updateScore(fullRows, fullColumns);
         }
     }
 
     /**
-     * Clears all GridCells in given row of the Grid.
-     * @param y the row
+     * Finds the full rows of given bitboard.
+     * @param low the non-empty cells with indices 0..63
+     * @param high the non-empty cells with indices 64..80
+     * @return the bitmask of full rows (bit y set = row y full)
      */
-    private void clearRow(int y) {
-        for (int x = 0; x < size; x++) {
-            // clear cell
-            cells[y][x].clear();
+    static int findFullRows(long low, long high) {
+        int fullRows = 0;
+        for (int y = 0; y < SIZE; y++) {
+            if ((low & rowMasksLow[y]) == rowMasksLow[y]
+                    && (high & rowMasksHigh[y]) == rowMasksHigh[y]) {
+                fullRows |= 1 << y;
+            }
+        }
+        return fullRows;
+    }
 
-            // remember cell as recently cleared
-            if (!recentlyClearedCells.contains(cells[y][x])) {
-                recentlyClearedCells.add(cells[y][x]);
+    /**
+     * Finds the full columns of given bitboard.
+     * @param low the non-empty cells with indices 0..63
+     * @param high the non-empty cells with indices 64..80
+     * @return the bitmask of full columns (bit x set = column x full)
+     */
+    static int findFullColumns(long low, long high) {
+        int fullColumns = 0;
+        for (int x = 0; x < SIZE; x++) {
+            if ((low & columnMasksLow[x]) == columnMasksLow[x]
+                    && (high & columnMasksHigh[x]) == columnMasksHigh[x]) {
+                fullColumns |= 1 << x;
             }
         }
+        return fullColumns;
     }
 
     /**
-     * Clears all GridCells in given column of the Grid.
-     * @param x the column
+     * Gets the lower word of the bitboard of all cells in given rows and columns.
+     * @param rows the bitmask of rows (bit y set = row y)
+     * @param columns the bitmask of columns (bit x set = column x)
+     * @return the cells with indices 0..63
      */
-    private void clearColumn(int x) {
-        for (int y = 0; y < size; y++) {
-            // clear cell
-            cells[y][x].clear();
+    static long getLinesLow(int rows, int columns) {
+        long cells = 0;
+        for (int i = 0; i < SIZE; i++) {
+            if ((rows & (1 << i)) != 0) {
+                cells |= rowMasksLow[i];
+            }
+            if ((columns & (1 << i)) != 0) {
+                cells |= columnMasksLow[i];
+            }
+        }
+        return cells;
+    }
 
-            // remember cell as recently cleared
-            if (!recentlyClearedCells.contains(cells[y][x])) {
-                recentlyClearedCells.add(cells[y][x]);
+    /**
+     * Gets the higher word of the bitboard of all cells in given rows and columns.
+     * @param rows the bitmask of rows (bit y set = row y)
+     * @param columns the bitmask of columns (bit x set = column x)
+     * @return the cells with indices 64..80
+     */
+    static long getLinesHigh(int rows, int columns) {
+        long cells = 0;
+        for (int i = 0; i < SIZE; i++) {
+            if ((rows & (1 << i)) != 0) {
+                cells |= rowMasksHigh[i];
+            }
+            if ((columns & (1 << i)) != 0) {
+                cells |= columnMasksHigh[i];
             }
         }
+        return cells;
     }
 
     /**
      * Inserts given BlockCombo into the Grid, so that BlockCombo's
      * start block is inserted in given GridCell.
-     * Clears all full rows and columns afterwards.
+     * Clears all full rows and columns afterwards, see getLastClearedRows()
+     * and getLastClearedColumns().
+     * Throws IllegalStateException if BlockCombo cannot be inserted there.
      * @param cell the GridCell for the start block
      * @param combo the BlockCombo to be inserted
      */
     void insertBlockCombo(GridCell cell, BlockCombo combo) {
-        for (int[] block : combo.getComboFormation()) {
-            // find target cell for block
-            GridCell targetCell = getCellAt(cell.getPosX() + block[0],
-                                            cell.getPosY() + block[1]);
-            // fill target cell
-            targetCell.fill();
+        ComboShape shape = combo.getShape();
+        int rotation = combo.getCurrentRotation();
+        int anchor = cellIndex(cell.getPosX(), cell.getPosY());
+
+        if (!canInsertBlockCombo(cell, combo)) {
+            throw new IllegalStateException("BlockCombo cannot be inserted at ("
+                    + cell.getPosX() + ", " + cell.getPosY() + ").");
         }
+        // fill target cells
+        long filledLow = shape.getAnchorMaskLow(rotation, anchor);
+        long filledHigh = shape.getAnchorMaskHigh(rotation, anchor);
+        occupiedLow |= filledLow;
+        occupiedHigh |= filledHigh;
+        hash ^= ZobristKeys.hashCells(filledLow, filledHigh);
+
         clearFullRowsAndColumns();
     }
 
@@ -209,24 +403,55 @@ public class Grid {
      * @return true if BlockCombo can be inserted, false otherwise
      */
     boolean canInsertBlockCombo(GridCell cell, BlockCombo combo) {
-        for (int[] block : combo.getComboFormation()) {
-            // find position of target cell for block
-            int targetCellX = cell.getPosX() + block[0];
-            int targetCellY = cell.getPosY() + block[1];
-            if (positionOutOfBounds(targetCellX, targetCellY)) {
-                // block would be placed out of bounds of the Grid
-                return false;
-            }
+        return canInsertComboShape(combo.getShape(), combo.getCurrentRotation(),
+                                   cellIndex(cell.getPosX(), cell.getPosY()));
+    }
 
-            // check if target cell is empty
-            GridCell targetCell = getCellAt(targetCellX, targetCellY);
-            if (!targetCell.isEmpty()) {
-                // block's target cell is non-empty
-                return false;
-            }
+    /**
+     * Checks if given ComboShape can be inserted into the Grid, so that
+     * its start block is inserted in the cell with given index.
+     * @param shape the ComboShape to be inserted
+     * @param rotation the number of rotations by 90° to the right (0..3)
+     * @param anchor the cell index for the start block
+     * @return true if ComboShape can be inserted, false otherwise
+     */
+    boolean canInsertComboShape(ComboShape shape, int rotation, int anchor) {
+        if (!shape.isLegalAnchor(rotation, anchor)) {
+            // some block would be placed out of bounds of the Grid
+            return false;
         }
 
-        return true;
+        // check if all target cells are empty
+        return (occupiedLow & shape.getAnchorMaskLow(rotation, anchor)) == 0
+                && (occupiedHigh & shape.getAnchorMaskHigh(rotation, anchor)) == 0;
+    }
+
+    /**
+     * Counts the rows and columns that would be full if given ComboShape was
+     * inserted so that its start block is inserted in the cell with given index.
+     * The Grid is not changed.
+     * Only meaningful if canInsertComboShape(shape, rotation, anchor) is true.
+     * @param shape the ComboShape to be inserted
+     * @param rotation the number of rotations by 90° to the right (0..3)
+     * @param anchor the cell index for the start block
+     * @return the number of full rows and columns after inserting
+     */
+    int countFullRowsAndColumnsAfterInsert(ComboShape shape, int rotation, int anchor) {
+        long low = occupiedLow | shape.getAnchorMaskLow(rotation, anchor);
+        long high = occupiedHigh | shape.getAnchorMaskHigh(rotation, anchor);
+
+        int fullRowsAndColumns = 0;
+        for (int i = 0; i < SIZE; i++) {
+            if ((low & rowMasksLow[i]) == rowMasksLow[i]
+                    && (high & rowMasksHigh[i]) == rowMasksHigh[i]) {
+                fullRowsAndColumns += 1;
+            }
+            if ((low & columnMasksLow[i]) == columnMasksLow[i]
+                    && (high & columnMasksHigh[i]) == columnMasksHigh[i]) {
+                fullRowsAndColumns += 1;
+            }
+        }
+        return fullRowsAndColumns;
     }
 
     /**
@@ -236,24 +461,14 @@ public class Grid {
      * @return true if BlockCombo can be inserted anywhere, false otherwise
      */
     boolean canInsertBlockCombo(BlockCombo combo, boolean withRotation) {
-
-        for (int x = 0; x < size; x++) {
-            for (int y = 0; y < size; y++) {
-                if (canInsertBlockCombo(cells[y][x], combo)) {
-                    // combo can be inserted at cells[y][x]
-                    return true;
-                }
-
-                if (withRotation) {
-                    BlockCombo comboCopy = combo.createCopy();
-                    for (int i = 0; i < 3; i++) {
-                        comboCopy.tryRotate();
-                        if (canInsertBlockCombo(cells[y][x], comboCopy)) {
-                            // rotated combo can be inserted at cells[y][x]
-                            return true;
-                        }
-                    }
-                }
+        ComboShape shape = combo.getShape();
+        int reachableRotations = withRotation ? shape.getSymmetryOrder() : 1;
+
+        for (int steps = 0; steps < reachableRotations; steps++) {
+            int rotation = combo.getReachableRotation(steps);
+            if (placeabilityIndex.getFittingAnchorCount(shape, rotation) > 0) {
+                // (rotated) combo can be inserted somewhere
+                return true;
             }
         }
 
@@ -261,6 +476,33 @@ public class Grid {
         return false;
     }
 
+    /**
+     * Counts the possibilities to insert given BlockCombo into the Grid.
+     * @param combo the BlockCombo to be inserted
+     * @param withRotation specifies if BlockCombo can be rotated before inserting
+     * @return the number of distinct (rotation, start block cell) pairs where
+     *         the BlockCombo can be inserted
+     */
+    int countInsertPossibilities(BlockCombo combo, boolean withRotation) {
+        ComboShape shape = combo.getShape();
+        int reachableRotations = withRotation ? shape.getSymmetryOrder() : 1;
+
+        int possibilities = 0;
+        for (int steps = 0; steps < reachableRotations; steps++) {
+            possibilities += placeabilityIndex.getFittingAnchorCount(
+                    shape, combo.getReachableRotation(steps));
+        }
+        return possibilities;
+    }
+
+    /**
+     * Gets the PlaceabilityIndex of this Grid.
+     * @return the placeabilityIndex
+     */
+    PlaceabilityIndex getPlaceabilityIndex() {
+        return placeabilityIndex;
+    }
+
     /**
      * Checks if the given position is outside the Grid.
      * @param posX x-coordinate of the questioned position
@@ -268,7 +510,7 @@ public class Grid {
      * @return true if the position is outside the Grid, false otherwise
      */
     boolean positionOutOfBounds(int posX, int posY) {
-        return posX < 0 || posX >= size || posY < 0 || posY >= size;
+        return posX < 0 || posX >= SIZE || posY < 0 || posY >= SIZE;
     }
 
 }
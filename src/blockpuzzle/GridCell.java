@@ -2,13 +2,15 @@ package blockpuzzle;
 
 /**
  * A GridCell represents a single cell in a Grid.
+ * It is a view on the Grid's bitboard and does not store any state itself.
  */
 public class GridCell {
+    private final Grid grid;
     private final int posX;
     private final int posY;
-    private boolean empty = true;
 
-    GridCell(int positionX, int positionY) {
+    GridCell(Grid grid, int positionX, int positionY) {
+        this.grid = grid;
         posX = positionX;
         posY = positionY;
     }
@@ -31,29 +33,25 @@ public class GridCell {
 
     /**
      * Checks whether this GridCell is empty or not
-     * @return true if empty == true, false otherwise
+     * @return true if the Grid's bitboard marks this cell as empty, false otherwise
      */
     boolean isEmpty() {
-        return empty;
+        return grid.isCellEmpty(posX, posY);
     }
 
     /**
-     * Sets empty = true.
+     * Marks this GridCell as empty in the Grid's bitboard.
      */
     void clear() {
-        empty = true;
+        grid.clearCell(posX, posY);
     }
 
     /**
-     * Sets empty = false.
+     * Marks this GridCell as non-empty in the Grid's bitboard.
      * Throws IllegalStateException if GridCell is not empty.
      */
     void fill() {
-        if (!empty) {
-            throw new IllegalStateException("fill() must not be called " +
-                    "when GridCell is not empty.");
-        }
-        empty = false;
+        grid.fillCell(posX, posY);
     }
 
 
@@ -2,18 +2,48 @@ package blockpuzzle;
 
 import javax.swing.*;
 import java.awt.*;
-import java.util.HashMap;
-import java.util.Map;
+import java.awt.image.BufferedImage;
+import java.util.List;
 
 /**
  * A GridPanel is an extended JPanel that contains
- * the logical and visual representation of a Grid.
+ * the visual representation of the GameEngine's Grid.
+ *
+ * The grid lines and the fills of the cells are retained in an offscreen
+ * image, the grid layer. Before each frame only the cells whose occupancy
+ * changed since the last frame are repainted into it; drop targets, effects
+ * and highlights are drawn on top of it in every frame.
+ *
+ * The highlighted cells are bitboards like the Grid's occupancy, all in one
+ * color (darker on occupied cells). Changing them repaints only the cells
+ * whose highlighting changed, so hovering does not repaint the whole frame.
+ * The highlighting of the hovered cell is only recalculated if the hovered
+ * cell, the BlockCombo, its rotation or the Grid changed
+ * (see highlightHover()).
  */
 public class GridPanel extends JPanel {
+    private static final Color EMPTY_CELL_COLOR = new Color(230, 230, 230);
+    private static final Color FILLED_CELL_COLOR = Color.GRAY;
+    private static final Color DROP_TARGET_COLOR = new Color(190, 190, 190);
+    private static final Color FITTING_HOVER_COLOR = new Color(153, 255, 153);
+    private static final Color NOT_FITTING_HOVER_COLOR = new Color(255, 153, 153);
+    // colors of recently cleared cells by the remaining time of the effect
+    private static final Color[] CLEARED_CELL_COLORS = {null,
+            new Color(205, 205, 205), new Color(180, 180, 180), new Color(0, 153, 0)};
+    private static final Color GAME_OVER_FADE_COLOR = new Color(255, 255, 255, 170);
+    private static final Color GAME_OVER_TEXT_COLOR = new Color(20, 20, 20);
+    private static final Font GAME_OVER_FONT = new Font("Monospaced", Font.BOLD, 35);
+    private static final Font RESTART_FONT = new Font("Monospaced", Font.BOLD, 23);
+
     private final GameManager gameManager;
 
     private final Grid grid;
-    private final Map<GridCell, Color> highlightedCells = new HashMap<>();
+    // highlighted cells (bit y * 9 + x, see Grid) and their color
+    private long highlightedLow = 0;
+    private long highlightedHigh = 0;
+    private Color highlightColor = FITTING_HOVER_COLOR;
+    // color of highlighted cells that are occupied
+    private Color occupiedHighlightColor = FITTING_HOVER_COLOR.darker().darker();
 
     // x-coordinate of the grid's upper left corner (in pixels)
     private final int posX = 11;
@@ -24,36 +54,34 @@ public class GridPanel extends JPanel {
     private final int cellSize = 31;
     private final Rectangle gridArea;
 
-    GridPanel(GameManager gameM) {
+    // retained image of the grid lines and cell fills, created with the first frame
+    private BufferedImage gridLayer = null;
+    // occupancy of the cells as painted into gridLayer
+    private long paintedLow = 0;
+    private long paintedHigh = 0;
+
+    // what the highlighted cells show if they are the hover highlighting,
+    // hoverCombo is null if they are not
+    private BlockCombo hoverCombo = null;
+    private int hoverRotation;
+    private int hoverAnchor;
+    private long hoverGridLow;
+    private long hoverGridHigh;
+
+    GridPanel(GameManager gameM, GameEngine engine) {
         gameManager = gameM;
 
-        grid = new Grid(gameM);
+        grid = engine.getGrid();
         gridArea = new Rectangle(posX, posY,
                                 grid.getSize() * cellSize,
                                 grid.getSize() * cellSize);
     }
 
     /**
-     * Restores the GridPanel based on the game state represented by given savegame.
-     * @param savegame the Savegame representing the game state to be restored
-     */
-    void restorePanel(Savegame savegame) {
-        // fill cells that are marked as filled in savegame's grid
-        for (int x = 0; x < grid.getSize(); x++) {
-            for (int y = 0; y < grid.getSize(); y++) {
-                if (savegame.getGrid()[y][x]) {
-                    // cell at (x, y) shall be full
-                    grid.getCellAt(x, y).fill();
-                }
-            }
-        }
-    }
-
-    /**
-     * Resets the GridPanel (and so clears the Grid) to its initial state.
+     * Resets the GridPanel to its initial state, i.e. removes all highlighting.
      */
     void reset() {
-        grid.clear();
+        clearHighlightedCells();
     }
 
     /**
@@ -85,37 +113,134 @@ public class GridPanel extends JPanel {
         return grid.getCellAt(cellX, cellY);
     }
 
+    /**
+     * Highlights the cells given BlockCombo would cover if it was dropped with
+     * its start block on given cell: green if it fits, red otherwise.
+     * Nothing is calculated if the hover highlighting for the same cell,
+     * BlockCombo, rotation and Grid is shown already.
+     * @param combo the hovering BlockCombo
+     * @param targetCell the hovered GridCell
+     */
+    void highlightHover(BlockCombo combo, GridCell targetCell) {
+        int anchor = Grid.cellIndex(targetCell.getPosX(), targetCell.getPosY());
+        if (combo == hoverCombo && combo.getRotationSteps() == hoverRotation
+                && anchor == hoverAnchor && grid.getOccupiedLow() == hoverGridLow
+                && grid.getOccupiedHigh() == hoverGridHigh) {
+            return;
+        }
+
+        if (grid.canInsertBlockCombo(targetCell, combo)) {
+            // insert possible: highlight green
+            calculateHighlightedCells(combo, targetCell, FITTING_HOVER_COLOR);
+        }
+        else {
+            // insert not possible: highlight red
+            calculateHighlightedCells(combo, targetCell, NOT_FITTING_HOVER_COLOR);
+        }
+
+        hoverCombo = combo;
+        hoverRotation = combo.getRotationSteps();
+        hoverAnchor = anchor;
+        hoverGridLow = grid.getOccupiedLow();
+        hoverGridHigh = grid.getOccupiedHigh();
+    }
+
     /**
      * Calculates all GridCells that shall be highlighted and remembers them in
-     * highlightedCells.
+     * the highlighted cells. No objects are created unless the color changes.
      * A GridCell shall be highlighted if and only if it would be filled if
      * given BlockCombo is inserted in given targetCell.
      * @param combo the BlockCombo that triggers the highlighting
      * @param targetCell the GridCell corresponding with combo's start block
+     * @param color the color of the highlighting
      */
     void calculateHighlightedCells(BlockCombo combo, GridCell targetCell, Color color) {
-        highlightedCells.clear();
-
-        for (int[] block : combo.getComboFormation()) {
-            // get position that shall be highlighted
-            int[] highlightedPosition = {targetCell.getPosX() + block[0],
-                                         targetCell.getPosY() + block[1]};
-            // check if highlightedPosition is inside the grid
-            if (!grid.positionOutOfBounds(highlightedPosition[0],
-                                          highlightedPosition[1])) {
-                // remember the GridCell corresponding to highlightedPosition
-                highlightedCells.put(grid.getCellAt(highlightedPosition[0],
-                                                    highlightedPosition[1]),
-                                     color);
+        hoverCombo = null;
+        long cellsLow = 0;
+        long cellsHigh = 0;
+        // indexed loop, so hovering creates no iterator
+        List<int[]> formation = combo.getComboFormation();
+        for (int i = 0; i < formation.size(); i++) {
+            int[] block = formation.get(i);
+            int x = targetCell.getPosX() + block[0];
+            int y = targetCell.getPosY() + block[1];
+            // only positions inside the grid are highlighted
+            if (!grid.positionOutOfBounds(x, y)) {
+                int index = Grid.cellIndex(x, y);
+                if (index < 64) {
+                    cellsLow |= 1L << index;
+                }
+                else {
+                    cellsHigh |= 1L << (index - 64);
+                }
             }
         }
+
+        boolean colorChanged = !color.equals(highlightColor);
+        if (colorChanged) {
+            highlightColor = color;
+            occupiedHighlightColor = color.darker().darker();
+        }
+        setHighlightedCells(cellsLow, cellsHigh, colorChanged);
     }
 
     /**
-     * Clears the list of highlightedCells.
+     * Clears the highlighted cells.
      */
     void clearHighlightedCells() {
-        highlightedCells.clear();
+        hoverCombo = null;
+        setHighlightedCells(0, 0, false);
+    }
+
+    /**
+     * Sets the highlighted cells and repaints the cells whose highlighting changed.
+     * @param cellsLow the highlighted cells 0..63
+     * @param cellsHigh the highlighted cells 64..80
+     * @param colorChanged specifies if the color of the highlighting has changed
+     */
+    private void setHighlightedCells(long cellsLow, long cellsHigh, boolean colorChanged) {
+        long damagedLow = highlightedLow ^ cellsLow;
+        long damagedHigh = highlightedHigh ^ cellsHigh;
+        if (colorChanged) {
+            damagedLow |= highlightedLow | cellsLow;
+            damagedHigh |= highlightedHigh | cellsHigh;
+        }
+        highlightedLow = cellsLow;
+        highlightedHigh = cellsHigh;
+        repaintCells(damagedLow, damagedHigh);
+    }
+
+    /**
+     * Repaints the bounding box of the given cells.
+     * @param cellsLow the cells 0..63
+     * @param cellsHigh the cells 64..80
+     */
+    private void repaintCells(long cellsLow, long cellsHigh) {
+        if (cellsLow == 0 && cellsHigh == 0) {
+            return;
+        }
+        int minX = grid.getSize();
+        int minY = grid.getSize();
+        int maxX = -1;
+        int maxY = -1;
+        while (cellsLow != 0) {
+            int index = Long.numberOfTrailingZeros(cellsLow);
+            minX = Math.min(minX, index % grid.getSize());
+            maxX = Math.max(maxX, index % grid.getSize());
+            minY = Math.min(minY, index / grid.getSize());
+            maxY = Math.max(maxY, index / grid.getSize());
+            cellsLow &= cellsLow - 1;  // remove lowest set bit
+        }
+        while (cellsHigh != 0) {
+            int index = 64 + Long.numberOfTrailingZeros(cellsHigh);
+            minX = Math.min(minX, index % grid.getSize());
+            maxX = Math.max(maxX, index % grid.getSize());
+            minY = Math.min(minY, index / grid.getSize());
+            maxY = Math.max(maxY, index / grid.getSize());
+            cellsHigh &= cellsHigh - 1;  // remove lowest set bit
+        }
+        repaint(posX + minX * cellSize, posY + minY * cellSize,
+                (maxX - minX + 1) * cellSize, (maxY - minY + 1) * cellSize);
     }
 
     /**
@@ -123,7 +248,94 @@ public class GridPanel extends JPanel {
      * @param g the Graphics object given by paintComponent()
      */
     private void drawGrid(Graphics g) {
-        // draw empty grid
+        // draw grid lines and cell fills from the retained grid layer
+        updateGridLayer();
+        g.drawImage(gridLayer, posX - 1, posY - 1, null);
+
+        // mark all cells the selected BlockCombo's start block can be dropped on
+        BlockCombo selectedCombo = gameManager.getSelectedBlockCombo();
+        if (selectedCombo != null && !gameManager.isGameOver()) {
+            g.setColor(DROP_TARGET_COLOR);
+            markDropTargets(g, selectedCombo);
+        }
+
+        // show effect for recently cleared cells
+        int clearedTimer = grid.getRecentlyClearedTimer();
+        if (clearedTimer > 0 && clearedTimer < CLEARED_CELL_COLORS.length) {
+            g.setColor(CLEARED_CELL_COLORS[clearedTimer]);
+            colorRecentlyClearedCells(g);
+        }
+
+        // highlight cells, occupied ones darker
+        g.setColor(highlightColor);
+        colorCells(g, highlightedLow & ~grid.getOccupiedLow(),
+                   highlightedHigh & ~grid.getOccupiedHigh());
+        g.setColor(occupiedHighlightColor);
+        colorCells(g, highlightedLow & grid.getOccupiedLow(),
+                   highlightedHigh & grid.getOccupiedHigh());
+
+        // if game is over, draw "GAME OVER" writing
+        if(gameManager.isGameOver()) {
+            drawGameOverWriting(g);
+        }
+    }
+
+    /**
+     * Brings the grid layer up to date: it is created with the grid lines and
+     * empty cells if necessary, then only the cells whose occupancy changed
+     * since the last update are refilled.
+     */
+    private void updateGridLayer() {
+        if (gridLayer == null) {
+            gridLayer = createGridLayer();
+            paintedLow = 0;
+            paintedHigh = 0;
+        }
+
+        long occupiedLow = grid.getOccupiedLow();
+        long occupiedHigh = grid.getOccupiedHigh();
+        long changedLow = occupiedLow ^ paintedLow;
+        long changedHigh = occupiedHigh ^ paintedHigh;
+        if (changedLow == 0 && changedHigh == 0) {
+            return;
+        }
+
+        Graphics g = gridLayer.getGraphics();
+        // the layer's origin is the grid's upper left corner
+        g.translate(1 - posX, 1 - posY);
+        while (changedLow != 0) {
+            int index = Long.numberOfTrailingZeros(changedLow);
+            g.setColor((occupiedLow & changedLow & -changedLow) != 0
+                       ? FILLED_CELL_COLOR : EMPTY_CELL_COLOR);
+            colorCell(g, index % grid.getSize(), index / grid.getSize());
+            changedLow &= changedLow - 1;  // remove lowest set bit
+        }
+        while (changedHigh != 0) {
+            int index = 64 + Long.numberOfTrailingZeros(changedHigh);
+            g.setColor((occupiedHigh & changedHigh & -changedHigh) != 0
+                       ? FILLED_CELL_COLOR : EMPTY_CELL_COLOR);
+            colorCell(g, index % grid.getSize(), index / grid.getSize());
+            changedHigh &= changedHigh - 1;  // remove lowest set bit
+        }
+        g.dispose();
+
+        paintedLow = occupiedLow;
+        paintedHigh = occupiedHigh;
+    }
+
+    /**
+     * Creates the grid layer with the grid lines and all cells empty.
+     * @return the grid layer
+     */
+    private BufferedImage createGridLayer() {
+        int size = cellSize * grid.getSize() + 2;
+        GraphicsConfiguration configuration = getGraphicsConfiguration();
+        BufferedImage layer = configuration != null
+                ? configuration.createCompatibleImage(size, size)
+                : new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+
+        Graphics g = layer.getGraphics();
+        g.translate(1 - posX, 1 - posY);
         g.setColor(Color.BLACK);
         g.drawRect(posX - 1, posY - 1,
                    (cellSize - 1) * grid.getSize() + grid.getSize() + 1,
@@ -135,76 +347,96 @@ public class GridPanel extends JPanel {
             }
         }
 
-        // fill grid where cells are non-empty
-        g.setColor(Color.GRAY);
+        // paint empty cells in light gray
+        g.setColor(EMPTY_CELL_COLOR);
         for (int x = 0; x < grid.getSize(); x++) {
             for (int y = 0; y < grid.getSize(); y++) {
-                if (!grid.getCells()[y][x].isEmpty()) {
-                    colorCell(g, grid.getCells()[y][x]);
-                }
-                else {
-                    // paint empty cells in light gray
-                    g.setColor(new Color(230, 230, 230));
-                    colorCell(g, grid.getCells()[y][x]);
-                    g.setColor(Color.GRAY);
-                }
+                colorCell(g, x, y);
             }
         }
+        g.dispose();
+        return layer;
+    }
 
-        // show effect for recently cleared cells
-        switch(grid.getRecentlyClearedTimer()) {
-            case 3:
-                for (GridCell clearedCell : grid.getRecentlyClearedCells()) {
-                    //g.setColor(new Color(155, 155, 155));
-                    g.setColor(new Color(0, 153, 0));
-                    colorCell(g, clearedCell);
-                    g.setColor(Color.GRAY);
-                }
-                break;
-            case 2:
-                for (GridCell clearedCell : grid.getRecentlyClearedCells()) {
-                    g.setColor(new Color(180, 180, 180));
-                    colorCell(g, clearedCell);
-                    g.setColor(Color.GRAY);
-                }
-                break;
-            case 1:
-                for (GridCell clearedCell : grid.getRecentlyClearedCells()) {
-                    g.setColor(new Color(205, 205, 205));
-                    colorCell(g, clearedCell);
-                    g.setColor(Color.GRAY);
-                }
-                break;
-        }
+    /**
+     * Colors the rectangle on the GridPanel that represents the cell at given position.
+     * @param g the Graphics object given by paintComponent() / drawGrid()
+     * @param x the x-position of the cell
+     * @param y the y-position of the cell
+     */
+    private void colorCell(Graphics g, int x, int y) {
+        g.fillRect(posX + 1 + x * cellSize,
+                   posY + 1 + y * cellSize,
+                   cellSize - 2,
+                   cellSize - 2);
+    }
 
-        // highlight cells
-        for (GridCell cell : highlightedCells.keySet()) {
-            if (cell.isEmpty()) {
-                g.setColor(highlightedCells.get(cell));
-                colorCell(g, cell);
-            }
-            else {
-                g.setColor(highlightedCells.get(cell).darker().darker());
-                colorCell(g, cell);
-            }
+    /**
+     * Colors the rectangles of all GridCells that have been recently cleared
+     * in the current color of the given Graphics object.
+     * @param g the Graphics object given by paintComponent() / drawGrid()
+     */
+    private void colorRecentlyClearedCells(Graphics g) {
+        colorCells(g, grid.getRecentlyClearedLow(), grid.getRecentlyClearedHigh());
+    }
+
+    /**
+     * Colors the rectangles of the given cells in the current color of the
+     * given Graphics object.
+     * @param g the Graphics object given by paintComponent() / drawGrid()
+     * @param cellsLow the cells 0..63
+     * @param cellsHigh the cells 64..80
+     */
+    private void colorCells(Graphics g, long cellsLow, long cellsHigh) {
+        while (cellsLow != 0) {
+            int index = Long.numberOfTrailingZeros(cellsLow);
+            colorCell(g, index % grid.getSize(), index / grid.getSize());
+            cellsLow &= cellsLow - 1;  // remove lowest set bit
         }
+        while (cellsHigh != 0) {
+            int index = 64 + Long.numberOfTrailingZeros(cellsHigh);
+            colorCell(g, index % grid.getSize(), index / grid.getSize());
+            cellsHigh &= cellsHigh - 1;  // remove lowest set bit
+        }
+    }
 
-        // if game is over, draw "GAME OVER" writing
-        if(gameManager.isGameOver()) {
-            drawGameOverWriting(g);
+    /**
+     * Marks every cell where given BlockCombo (in its current rotation) can be
+     * inserted with its start block in the current color of the given Graphics object.
+     * All these anchors are looked up at once in the Grid's PlaceabilityIndex.
+     * @param g the Graphics object given by paintComponent() / drawGrid()
+     * @param combo the BlockCombo to be dropped
+     */
+    private void markDropTargets(Graphics g, BlockCombo combo) {
+        PlaceabilityIndex index = grid.getPlaceabilityIndex();
+        ComboShape shape = combo.getShape();
+        int rotation = combo.getCurrentRotation();
+        long anchorsLow = index.getFittingAnchorsLow(shape, rotation);
+        long anchorsHigh = index.getFittingAnchorsHigh(shape, rotation);
+
+        while (anchorsLow != 0) {
+            int anchor = Long.numberOfTrailingZeros(anchorsLow);
+            markCell(g, anchor % grid.getSize(), anchor / grid.getSize());
+            anchorsLow &= anchorsLow - 1;  // remove lowest set bit
+        }
+        while (anchorsHigh != 0) {
+            int anchor = 64 + Long.numberOfTrailingZeros(anchorsHigh);
+            markCell(g, anchor % grid.getSize(), anchor / grid.getSize());
+            anchorsHigh &= anchorsHigh - 1;  // remove lowest set bit
         }
     }
 
     /**
-     * Colors the rectangle on the GridPanel that represents the given GridCell.
+     * Draws a small dot in the center of the cell at given position.
      * @param g the Graphics object given by paintComponent() / drawGrid()
-     * @param cell the GridCell to be colored
+     * @param x the x-position of the cell
+     * @param y the y-position of the cell
      */
-    private void colorCell(Graphics g, GridCell cell) {
-        g.fillRect(posX + 1 + cell.getPosX() * cellSize,
-                   posY + 1 + cell.getPosY() * cellSize,
-                   cellSize - 2,
-                   cellSize - 2);
+    private void markCell(Graphics g, int x, int y) {
+        int dotSize = 7;
+        g.fillOval(posX + x * cellSize + (cellSize - 1 - dotSize) / 2,
+                   posY + y * cellSize + (cellSize - 1 - dotSize) / 2,
+                   dotSize, dotSize);
     }
 
     /**
@@ -213,18 +445,18 @@ public class GridPanel extends JPanel {
      */
     private void drawGameOverWriting(Graphics g) {
         // fade the Grid
-        g.setColor(new Color(255, 255, 255, 170));
+        g.setColor(GAME_OVER_FADE_COLOR);
         g.fillRect(posX - 1, posY - 1,
                 (cellSize - 1) * grid.getSize() + grid.getSize() + 2,
                 (cellSize - 1) * grid.getSize() + grid.getSize() + 2);
-        g.setColor(new Color(20, 20, 20));
+        g.setColor(GAME_OVER_TEXT_COLOR);
 
         // draw "GAME OVER"
-        g.setFont(new Font("Monospaced", Font.BOLD, 35));
+        g.setFont(GAME_OVER_FONT);
         g.drawString("Game Over", posX + 46, posY + 119);
 
         // tell player that click restarts game
-        g.setFont(new Font("Monospaced", Font.BOLD, 23));
+        g.setFont(RESTART_FONT);
         g.drawString("Click to Restart", posX + 28, posY + 178);
     }
 
@@ -0,0 +1,114 @@
+package blockpuzzle;
+
+/**
+ * A Hint is the sequence of moves the HintSolver suggests for the rest of
+ * the current round.
+ *
+ * A move either places the BlockCombo of a slot (rotated a number of times
+ * from its original formation) with its start block at an anchor cell,
+ * or it saves the open BlockCombo of a slot, see MoveGenerator.
+ */
+public class Hint {
+    // moves encoded by the MoveGenerator
+    private final int[] moves;
+    private final long value;
+    private final boolean complete;
+
+    Hint(int[] moves, long value, boolean complete) {
+        this.moves = moves;
+        this.value = value;
+        this.complete = complete;
+    }
+
+    /**
+     * Gets the number of moves of this Hint.
+     * @return the number of moves, 0 if no move is possible
+     */
+    int getNumberOfMoves() {
+        return moves.length;
+    }
+
+    /**
+     * Checks if the given move saves a BlockCombo.
+     * @param i the index of the move
+     * @return true if the move saves a BlockCombo, false if it places one
+     */
+    boolean isSave(int i) {
+        return MoveGenerator.isSave(moves[i]);
+    }
+
+    /**
+     * Gets the slot of the BlockCombo moved by the given move.
+     * @param i the index of the move
+     * @return the slot
+     */
+    int getSlot(int i) {
+        return MoveGenerator.getSlot(moves[i]);
+    }
+
+    /**
+     * Gets the number of rotations applied to the original formation
+     * by the given placement.
+     * @param i the index of the move
+     * @return the rotation
+     */
+    int getRotation(int i) {
+        return MoveGenerator.getRotation(moves[i]);
+    }
+
+    /**
+     * Gets the x-position of the start block of the given placement.
+     * @param i the index of the move
+     * @return the x-position
+     */
+    int getX(int i) {
+        return MoveGenerator.getAnchor(moves[i]) % Grid.SIZE;
+    }
+
+    /**
+     * Gets the y-position of the start block of the given placement.
+     * @param i the index of the move
+     * @return the y-position
+     */
+    int getY(int i) {
+        return MoveGenerator.getAnchor(moves[i]) / Grid.SIZE;
+    }
+
+    /**
+     * Gets the value of this Hint's moves, higher is better.
+     * Values are only comparable between Hints of the same objective.
+     * @return the value
+     */
+    long getValue() {
+        return value;
+    }
+
+    /**
+     * Checks if all moves have been searched, i.e. the Hint is the best one.
+     * @return true if the search was complete, false if it ran out of time
+     */
+    boolean isComplete() {
+        return complete;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < moves.length; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            if (isSave(i)) {
+                builder.append("save ").append(getSlot(i));
+            }
+            else {
+                builder.append("place ").append(getSlot(i))
+                        .append(" r").append(getRotation(i))
+                        .append(" at (").append(getX(i)).append(", ")
+                        .append(getY(i)).append(")");
+            }
+        }
+        return builder.append(complete ? "" : " (incomplete)").toString();
+    }
+
+}
@@ -0,0 +1,102 @@
+package blockpuzzle;
+
+import javax.swing.*;
+import java.awt.Color;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A HintManager computes a Hint for the current game state in the background
+ * and shows its first move: the BlockCombo to be moved gets selected (and
+ * rotated) and the cells it shall be placed on are highlighted.
+ */
+public class HintManager {
+    // time the HintSolver may search, so a Hint is shown within one frame
+    private static final long timeLimitNanos = 10_000_000;
+
+    private final GameManager gameManager;
+    private final GameEngine engine;
+    private final GridPanel gridPanel;
+    private final BlockCombosPanel blockCombosPanel;
+
+    private final HintSolver solver = new HintSolver();
+    private SwingWorker<Hint, Void> worker = null;
+
+    HintManager(GameManager gameM, GameEngine gameEngine, GridPanel gridP,
+                BlockCombosPanel blockCombosP) {
+        gameManager = gameM;
+        engine = gameEngine;
+        gridPanel = gridP;
+        blockCombosPanel = blockCombosP;
+    }
+
+    /**
+     * Starts computing a Hint for the current game state.
+     * Does nothing if the game is over or a Hint is already being computed.
+     * Must be called on the event dispatch thread.
+     */
+    void requestHint() {
+        if (engine.isGameOver() || (worker != null && !worker.isDone())) {
+            return;
+        }
+
+        // copy the game state on the event dispatch thread
+        solver.setPosition(engine);
+        long stateHash = engine.getStateHash();
+
+        worker = new SwingWorker<>() {
+            @Override
+            protected Hint doInBackground() {
+                return solver.solve(HintSolver.Objective.SCORE, timeLimitNanos);
+            }
+
+            @Override
+            protected void done() {
+                Hint hint;
+                try {
+                    hint = get();
+                }
+                catch (InterruptedException | ExecutionException e) {
+                    System.err.println("An error occurred while computing a Hint.");
+                    e.printStackTrace();
+                    return;
+                }
+
+                // only show the Hint if the player did not move in the meantime
+                if (engine.getStateHash() == stateHash) {
+                    showHint(hint);
+                }
+            }
+        };
+        worker.execute();
+    }
+
+    /**
+     * Shows the first move of given Hint.
+     * @param hint the Hint
+     */
+    private void showHint(Hint hint) {
+        if (hint.getNumberOfMoves() == 0) {
+            return;
+        }
+
+        int slot = hint.getSlot(0);
+        blockCombosPanel.selectBlockCombo(slot);
+
+        if (hint.isSave(0)) {
+            // the selection shows which BlockCombo shall be saved
+            gridPanel.clearHighlightedCells();
+        }
+        else {
+            // rotate the BlockCombo as suggested and highlight its target cells
+            engine.resetRotation(slot);
+            for (int i = 0; i < hint.getRotation(0); i++) {
+                engine.rotate(slot);
+            }
+            gridPanel.calculateHighlightedCells(engine.getContainer(slot).getContent(),
+                    gridPanel.getGrid().getCellAt(hint.getX(0), hint.getY(0)),
+                    new Color(153, 204, 255));
+        }
+        gameManager.repaint();
+    }
+
+}
@@ -0,0 +1,584 @@
+package blockpuzzle;
+
+import java.util.Arrays;
+
+/**
+ * A HintSolver searches the best sequence of moves for the rest of the current
+ * round: every order of the open and saved BlockCombos, every anchor, every
+ * affordable rotation and every possibility to save a BlockCombo. The moves are
+ * played with the rules of the GameEngine (scoring, rotation economy, saved
+ * BlockCombo), the BlockCombos of the next round are unknown.
+ *
+ * A position reached by different move orders is searched only once: its value
+ * is remembered in a transposition table, keyed by the Zobrist hash of the
+ * position (the same hash as GameEngine.getStateHash()), which every move
+ * updates with a few XORs. The same position can be reached after different
+ * numbers of moves (e.g. saving and then placing a BlockCombo), so an entry is
+ * only used for the number of moves left to the horizon it was searched with.
+ * The search works on bitboards only and allocates nothing.
+ *
+ * The best line of every searched position (its principal variation) is
+ * recorded during the search, so the Hint never needs another search after
+ * the time limit. Where the line continues in a transposed position, it is
+ * completed from the best moves in the transposition table.
+ *
+ * On open boards a full search of a round can take far longer than a frame,
+ * so the search is iteratively deepened: the first iteration looks one move
+ * ahead and rates the positions with evaluate(), every further iteration one
+ * move more, until the round is searched completely or the time limit is
+ * exceeded. The Hint is taken from the deepest completed iteration.
+ *
+ * Call setPosition() on the thread owning the GameEngine, solve() may then
+ * run on any thread. A HintSolver must not be used by several threads at once.
+ */
+public class HintSolver {
+    /**
+     * The Objective states what a Hint maximizes. With SCORE the board quality
+     * after the round only breaks ties, with SURVIVAL the score does.
+     */
+    enum Objective { SCORE, SURVIVAL }
+
+    // maximum number of moves in a round (each BlockCombo can be saved once)
+    private static final int maximumPly = 8;
+    // values of positions after a round are in 0..qualityRange-1 per weight
+    private static final int qualityRange = 1024;
+    // value of a position in which the game is over
+    private static final long dead = Long.MIN_VALUE / 4;
+
+    private static final int tableBits = 18;
+    private static final int tableMask = (1 << tableBits) - 1;
+
+    // bitboard masks for the quality of a position
+    private static final long fullHigh = (1L << (Grid.SIZE * Grid.SIZE - 64)) - 1;
+    private static final long leftColumnLow;
+    private static final long leftColumnHigh;
+    private static final long rightColumnLow;
+    private static final long rightColumnHigh;
+    private static final long topRowLow = (1L << Grid.SIZE) - 1;
+    private static final long bottomRowHigh = fullHigh & ~((1L << (Grid.SIZE - 1)) - 1);
+
+    static {
+        long low = 0;
+        long high = 0;
+        long rightLow = 0;
+        long rightHigh = 0;
+        for (int y = 0; y < Grid.SIZE; y++) {
+            int left = Grid.cellIndex(0, y);
+            int right = Grid.cellIndex(Grid.SIZE - 1, y);
+            if (left < 64) {
+                low |= 1L << left;
+            }
+            else {
+                high |= 1L << (left - 64);
+            }
+            if (right < 64) {
+                rightLow |= 1L << right;
+            }
+            else {
+                rightHigh |= 1L << (right - 64);
+            }
+        }
+        leftColumnLow = low;
+        leftColumnHigh = high;
+        rightColumnLow = rightLow;
+        rightColumnHigh = rightHigh;
+    }
+
+    // the position to be solved
+    private final ComboShape[] openShapes = new ComboShape[GameEngine.NUMBER_OF_OPEN_SLOTS];
+    private final int[] openOriginalRotations = new int[GameEngine.NUMBER_OF_OPEN_SLOTS];
+    private int maximumRemainingRoundsForSavedCombo;
+
+    // state of the positions on the current search path, indexed by ply;
+    // saved = shape id << 2 | original rotation of the saved BlockCombo, -1 if none
+    private final long[] occupiedLow = new long[maximumPly + 1];
+    private final long[] occupiedHigh = new long[maximumPly + 1];
+    private final int[] openMasks = new int[maximumPly + 1];
+    private final int[] saved = new int[maximumPly + 1];
+    private final int[] remainingRounds = new int[maximumPly + 1];
+    private final int[] rotations = new int[maximumPly + 1];
+    private final int[] nextRotations = new int[maximumPly + 1];
+    private final long[] hashes = new long[maximumPly + 1];
+
+    private final int[][] moveBuffers = new int[maximumPly][MoveGenerator.MAXIMUM_MOVES];
+    private final long[] rootOrder = new long[MoveGenerator.MAXIMUM_MOVES];
+
+    // principal variation of the position at each ply: pvMoves[ply][ply..pvLengths[ply]-1];
+    // pvTransposed[ply] is set if the position was found in the transposition table
+    private final int[][] pvMoves = new int[maximumPly + 1][maximumPly];
+    private final int[] pvLengths = new int[maximumPly + 1];
+    private final boolean[] pvTransposed = new boolean[maximumPly + 1];
+
+    // transposition table, an entry is valid if its stamp equals generation
+    private final long[] tableKeys = new long[1 << tableBits];
+    private final long[] tableValues = new long[1 << tableBits];
+    private final int[] tableMoves = new int[1 << tableBits];
+    // number of moves that were left to the horizon when the entry was searched
+    private final int[] tableDepths = new int[1 << tableBits];
+    private final int[] tableStamps = new int[1 << tableBits];
+    private int generation = 0;
+
+    // state of the running search
+    private long scoreWeight;
+    private long qualityWeight;
+    private long deadline;
+    private long nodes;
+    private boolean aborted;
+    // positions at this ply are rated instead of searched further
+    private int horizon;
+    private boolean horizonReached;
+    private int rootBestMove;
+    private long rootBestValue;
+
+    /**
+     * Copies the position of given GameEngine into this HintSolver.
+     * @param engine the GameEngine
+     */
+    void setPosition(GameEngine engine) {
+        Grid grid = engine.getGrid();
+        occupiedLow[0] = grid.getOccupiedLow();
+        occupiedHigh[0] = grid.getOccupiedHigh();
+
+        openMasks[0] = 0;
+        for (int slot = 0; slot < GameEngine.NUMBER_OF_OPEN_SLOTS; slot++) {
+            SingleContainer<BlockCombo> container = engine.getContainer(slot);
+            if (!container.isEmpty()) {
+                BlockCombo combo = container.getContent();
+                openMasks[0] |= 1 << slot;
+                openShapes[slot] = combo.getShape();
+                openOriginalRotations[slot] = combo.getOriginalRotation();
+            }
+        }
+
+        SingleContainer<BlockCombo> savedContainer = engine.getSavedBlockCombo();
+        if (savedContainer.isEmpty()) {
+            saved[0] = -1;
+            remainingRounds[0] = 0;
+        }
+        else {
+            BlockCombo combo = savedContainer.getContent();
+            saved[0] = combo.getShape().getId() << 2 | combo.getOriginalRotation();
+            remainingRounds[0] = engine.getRemainingRoundsForSavedCombo();
+        }
+        maximumRemainingRoundsForSavedCombo = engine.getMaximumRemainingRoundsForSavedCombo();
+
+        rotations[0] = engine.getRotations();
+        nextRotations[0] = engine.getNextRotation();
+        hashes[0] = engine.getStateHash();
+    }
+
+    /**
+     * Searches the best moves for the position set by setPosition().
+     * @param objective what the moves shall maximize
+     * @param timeLimitNanos the time the search may take
+     * @return the Hint, it contains no moves if no move is possible
+     */
+    Hint solve(Objective objective, long timeLimitNanos) {
+        scoreWeight = objective == Objective.SCORE ? qualityRange : 1;
+        qualityWeight = objective == Objective.SCORE ? 1 : 1 << 20;
+
+        deadline = System.nanoTime() + timeLimitNanos;
+        nodes = 0;
+        aborted = false;
+
+        int[] bestMoves = new int[0];
+        long bestValue = dead;
+        int previousBestMove = -1;
+        for (horizon = 1; horizon <= maximumPly; horizon++) {
+            invalidateTable();
+            horizonReached = false;
+            rootBestMove = -1;
+            rootBestValue = dead;
+
+            long value = search(0, previousBestMove);
+            if (aborted) {
+                if (rootBestMove != -1 && rootBestMove != previousBestMove) {
+                    // the searched part of this iteration found a better first move
+                    bestMoves = new int[] {rootBestMove};
+                    bestValue = rootBestValue;
+                }
+                return new Hint(bestMoves, bestValue, false);
+            }
+
+            bestMoves = findBestMoves();
+            bestValue = value;
+            if (!horizonReached) {
+                // the whole round has been searched
+                return new Hint(bestMoves, bestValue, true);
+            }
+            previousBestMove = bestMoves.length > 0 ? bestMoves[0] : -1;
+        }
+        return new Hint(bestMoves, bestValue, true);
+    }
+
+    /**
+     * Invalidates all entries of the transposition table.
+     */
+    private void invalidateTable() {
+        generation += 1;
+        if (generation == 0) {
+            Arrays.fill(tableStamps, 0);
+            generation = 1;
+        }
+    }
+
+    /**
+     * Gets the number of moves played by the last search.
+     * @return the nodes
+     */
+    long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Gets the principal variation of the root found by the last search.
+     * @return the best moves
+     */
+    private int[] findBestMoves() {
+        return Arrays.copyOf(pvMoves[0], pvLengths[0]);
+    }
+
+    /**
+     * Searches the position at given ply.
+     * @param ply the number of moves made since the root
+     * @param firstMove the move to be searched first, -1 for none
+     * @return the value of the rest of the round, i.e. the weighted score of all
+     *         further moves plus the weighted quality of the position after the round
+     *         (or at the horizon)
+     */
+    private long search(int ply, int firstMove) {
+        pvLengths[ply] = ply;
+        pvTransposed[ply] = false;
+        if (isRoundOver(ply)) {
+            return qualityWeight * evaluate(occupiedLow[ply], occupiedHigh[ply], rotations[ply]);
+        }
+        if (ply == horizon) {
+            horizonReached = true;
+            return qualityWeight * evaluate(occupiedLow[ply], occupiedHigh[ply], rotations[ply]);
+        }
+
+        if (aborted) {
+            return 0;
+        }
+
+        int index = probe(ply);
+        if (index != -1) {
+            pvTransposed[ply] = true;
+            return tableValues[index];
+        }
+
+        int[] moves = moveBuffers[ply];
+        int numberOfMoves = generateMoves(ply, moves);
+        if (ply == 0) {
+            orderRootMoves(moves, numberOfMoves, firstMove);
+        }
+
+        long bestValue = dead;
+        int bestMove = -1;
+        for (int i = 0; i < numberOfMoves; i++) {
+            int move = ply == 0 ? moves[(int) rootOrder[i]] : moves[i];
+            long value = play(ply, move) + search(ply + 1, -1);
+            if (aborted) {
+                return 0;
+            }
+            if (value > bestValue) {
+                bestValue = value;
+                bestMove = move;
+                updatePrincipalVariation(ply, move);
+                if (ply == 0) {
+                    rootBestMove = move;
+                    rootBestValue = value;
+                }
+            }
+        }
+
+        store(ply, bestValue, bestMove);
+        return bestValue;
+    }
+
+    /**
+     * Sets the principal variation of the position at given ply to given move
+     * followed by the principal variation of the position after the move.
+     * Must be called right after the position after the move has been searched.
+     * A line completed from the transposition table ends early if one of its
+     * entries has been replaced.
+     * @param ply the ply of the position
+     * @param move the new best move of the position
+     */
+    private void updatePrincipalVariation(int ply, int move) {
+        int[] line = pvMoves[ply];
+        line[ply] = move;
+        int next = ply + 1;
+        if (pvTransposed[next]) {
+            // the position after the move has been searched before, follow
+            // the best moves stored in the transposition table
+            while (next < horizon && !isRoundOver(next)) {
+                int index = probe(next);
+                if (index == -1 || tableMoves[index] == -1) {
+                    break;
+                }
+                line[next] = tableMoves[index];
+                play(next, tableMoves[index]);
+                next += 1;
+            }
+        }
+        else {
+            System.arraycopy(pvMoves[next], next, line, next, pvLengths[next] - next);
+            next = pvLengths[next];
+        }
+        pvLengths[ply] = next;
+    }
+
+    /**
+     * Checks if the round is over in the position at given ply, i.e. all open
+     * BlockCombos have been used and no saved BlockCombo must be used this round.
+     * @param ply the ply of the position
+     * @return true if the round is over, false otherwise
+     */
+    private boolean isRoundOver(int ply) {
+        return openMasks[ply] == 0 && (saved[ply] == -1 || remainingRounds[ply] > 0);
+    }
+
+    /**
+     * Writes all moves of the position at given ply into the buffer.
+     * @param ply the ply of the position
+     * @param moves the buffer
+     * @return the number of moves
+     */
+    private int generateMoves(int ply, int[] moves) {
+        // rotated BlockCombos can only be placed if the rotation can be paid
+        boolean rotatable = rotations[ply] > 0;
+        int numberOfMoves = 0;
+
+        for (int slot = 0; slot < GameEngine.NUMBER_OF_OPEN_SLOTS; slot++) {
+            if ((openMasks[ply] & (1 << slot)) != 0) {
+                ComboShape shape = openShapes[slot];
+                numberOfMoves = MoveGenerator.generatePlacements(slot, shape,
+                        openOriginalRotations[slot], rotatable ? shape.getSymmetryOrder() : 1,
+                        occupiedLow[ply], occupiedHigh[ply], moves, numberOfMoves);
+            }
+        }
+        if (saved[ply] == -1) {
+            // an open BlockCombo can be saved if no BlockCombo is saved
+            numberOfMoves = MoveGenerator.addSaves(openMasks[ply], moves, numberOfMoves);
+        }
+        else {
+            ComboShape shape = ComboShapeCatalog.getShape(saved[ply] >> 2);
+            numberOfMoves = MoveGenerator.generatePlacements(GameEngine.SAVED_SLOT, shape,
+                    saved[ply] & 0b11, rotatable ? shape.getSymmetryOrder() : 1,
+                    occupiedLow[ply], occupiedHigh[ply], moves, numberOfMoves);
+        }
+        return numberOfMoves;
+    }
+
+    /**
+     * Orders the moves of the root position by the number of rows and columns
+     * they clear (descending), so that a search running out of time has
+     * searched the most promising moves. The order is stored in rootOrder.
+     * @param moves the moves of the root position
+     * @param numberOfMoves the number of moves
+     * @param firstMove the move to be ordered first, -1 for none
+     */
+    private void orderRootMoves(int[] moves, int numberOfMoves, int firstMove) {
+        for (int i = 0; i < numberOfMoves; i++) {
+            int lines = 0;
+            if (!MoveGenerator.isSave(moves[i])) {
+                int slot = MoveGenerator.getSlot(moves[i]);
+                ComboShape shape;
+                int originalRotation;
+                if (slot == GameEngine.SAVED_SLOT) {
+                    shape = ComboShapeCatalog.getShape(saved[0] >> 2);
+                    originalRotation = saved[0] & 0b11;
+                }
+                else {
+                    shape = openShapes[slot];
+                    originalRotation = openOriginalRotations[slot];
+                }
+                int rotation = (originalRotation + MoveGenerator.getRotation(moves[i]))
+                        % ComboShape.NUMBER_OF_ROTATIONS;
+                int anchor = MoveGenerator.getAnchor(moves[i]);
+                long low = occupiedLow[0] | shape.getAnchorMaskLow(rotation, anchor);
+                long high = occupiedHigh[0] | shape.getAnchorMaskHigh(rotation, anchor);
+                lines = Integer.bitCount(Grid.findFullRows(low, high))
+                        + Integer.bitCount(Grid.findFullColumns(low, high));
+            }
+            // sort key: first move, then most lines, then generation order
+            int rank = moves[i] == firstMove ? 0 : 1 + Grid.SIZE * 2 - lines;
+            rootOrder[i] = (long) rank << 32 | i;
+        }
+        Arrays.sort(rootOrder, 0, numberOfMoves);
+        for (int i = 0; i < numberOfMoves; i++) {
+            rootOrder[i] &= 0xFFFF_FFFFL;
+        }
+    }
+
+    /**
+     * Plays given move in the position at given ply, the resulting position
+     * is stored at ply + 1.
+     * @param ply the ply of the position
+     * @param move the encoded move
+     * @return the weighted score of the move
+     */
+    private long play(int ply, int move) {
+        nodes += 1;
+        if ((nodes & 1023) == 0 && System.nanoTime() > deadline) {
+            aborted = true;
+        }
+
+        int next = ply + 1;
+        long low = occupiedLow[ply];
+        long high = occupiedHigh[ply];
+        int openMask = openMasks[ply];
+        int savedCombo = saved[ply];
+        int remaining = remainingRounds[ply];
+        int availableRotations = rotations[ply];
+        int nextRotation = nextRotations[ply];
+        long hash = hashes[ply];
+        int slot = MoveGenerator.getSlot(move);
+        long score = 0;
+
+        if (MoveGenerator.isSave(move)) {
+            // move open BlockCombo to the saved slot
+            ComboShape shape = openShapes[slot];
+            int originalRotation = openOriginalRotations[slot];
+            savedCombo = shape.getId() << 2 | originalRotation;
+            remaining = maximumRemainingRoundsForSavedCombo;
+            openMask &= ~(1 << slot);
+            hash ^= ZobristKeys.getComboKey(slot, shape, originalRotation)
+                    ^ ZobristKeys.getComboKey(GameEngine.SAVED_SLOT, shape, originalRotation)
+                    ^ ZobristKeys.getRemainingRoundsKey(remaining);
+        }
+        else {
+            ComboShape shape;
+            int originalRotation;
+            if (slot == GameEngine.SAVED_SLOT) {
+                shape = ComboShapeCatalog.getShape(savedCombo >> 2);
+                originalRotation = savedCombo & 0b11;
+                hash ^= ZobristKeys.getRemainingRoundsKey(remaining);
+                savedCombo = -1;
+                remaining = 0;
+            }
+            else {
+                shape = openShapes[slot];
+                originalRotation = openOriginalRotations[slot];
+                openMask &= ~(1 << slot);
+            }
+            hash ^= ZobristKeys.getComboKey(slot, shape, originalRotation);
+            int steps = MoveGenerator.getRotation(move);
+            int rotation = (originalRotation + steps) % ComboShape.NUMBER_OF_ROTATIONS;
+            int anchor = MoveGenerator.getAnchor(move);
+
+            low |= shape.getAnchorMaskLow(rotation, anchor);
+            high |= shape.getAnchorMaskHigh(rotation, anchor);
+
+            // clear and score full rows and columns like GameEngine.updateScore()
+            int fullRows = Grid.findFullRows(low, high);
+            int fullColumns = Grid.findFullColumns(low, high);
+            if (fullRows != 0 || fullColumns != 0) {
+                low &= ~Grid.getLinesLow(fullRows, fullColumns);
+                high &= ~Grid.getLinesHigh(fullRows, fullColumns);
+                score = scoreWeight * GameEngine.calculateScore(fullRows, fullColumns);
+
+                // see GameEngine.updateNextRotation()
+                int lines = Integer.bitCount(fullRows) + Integer.bitCount(fullColumns);
+                nextRotation += (lines - 1) * 20;
+                while (nextRotation >= 100) {
+                    availableRotations += 1;
+                    nextRotation -= 100;
+                }
+            }
+            if (steps != 0) {
+                availableRotations -= 1;
+            }
+
+            hash ^= ZobristKeys.hashCells(low ^ occupiedLow[ply], high ^ occupiedHigh[ply]);
+            if (availableRotations != rotations[ply] || nextRotation != nextRotations[ply]) {
+                hash ^= ZobristKeys.getRotationsKey(rotations[ply], nextRotations[ply])
+                        ^ ZobristKeys.getRotationsKey(availableRotations, nextRotation);
+            }
+        }
+
+        occupiedLow[next] = low;
+        occupiedHigh[next] = high;
+        openMasks[next] = openMask;
+        saved[next] = savedCombo;
+        remainingRounds[next] = remaining;
+        rotations[next] = availableRotations;
+        nextRotations[next] = nextRotation;
+        hashes[next] = hash;
+        return score;
+    }
+
+    /**
+     * Rates the quality of a position after a round: empty cells and available
+     * rotations are good, empty cells enclosed by non-empty cells (only usable by
+     * the 1x1 BlockCombo) and borders between empty and non-empty cells are bad.
+     * @param low the non-empty cells with indices 0..63
+     * @param high the non-empty cells with indices 64..80
+     * @param availableRotations the number of available rotations
+     * @return the quality in 0..qualityRange-1
+     */
+    private static int evaluate(long low, long high, int availableRotations) {
+        long emptyLow = ~low;
+        long emptyHigh = ~high & fullHigh;
+
+        // for each cell: is its left/right/upper/lower neighbour non-empty or outside?
+        long leftLow = low << 1 | leftColumnLow;
+        long leftHigh = (high << 1 | low >>> 63) | leftColumnHigh;
+        long rightLow = (low >>> 1 | high << 63) | rightColumnLow;
+        long rightHigh = high >>> 1 | rightColumnHigh;
+        long upLow = low << Grid.SIZE | topRowLow;
+        long upHigh = high << Grid.SIZE | low >>> (64 - Grid.SIZE);
+        long downLow = low >>> Grid.SIZE | high << (64 - Grid.SIZE);
+        long downHigh = high >>> Grid.SIZE | bottomRowHigh;
+
+        int enclosed = Long.bitCount(emptyLow & leftLow & rightLow & upLow & downLow)
+                + Long.bitCount(emptyHigh & leftHigh & rightHigh & upHigh & downHigh);
+
+        // borders between horizontal and vertical neighbours
+        int borders = Long.bitCount((low ^ (low >>> 1 | high << 63)) & ~rightColumnLow)
+                + Long.bitCount((high ^ high >>> 1) & ~rightColumnHigh & fullHigh)
+                + Long.bitCount(low ^ (low >>> Grid.SIZE | high << (64 - Grid.SIZE)))
+                + Long.bitCount((high ^ high >>> Grid.SIZE) & ~bottomRowHigh & fullHigh);
+
+        int emptyCells = Long.bitCount(emptyLow) + Long.bitCount(emptyHigh);
+        int quality = 400 + 2 * emptyCells - 12 * enclosed - borders
+                + 8 * Math.min(availableRotations, 8);
+        return Math.max(0, Math.min(qualityRange - 1, quality));
+    }
+
+    /**
+     * Looks up the position at given ply in the transposition table.
+     * Only an entry searched with the same number of moves left to the
+     * horizon is found.
+     * @param ply the ply of the position
+     * @return the index of its entry, -1 if there is none
+     */
+    private int probe(int ply) {
+        long key = hashes[ply];
+        int index = (int) key & tableMask;
+        if (tableStamps[index] == generation && tableKeys[index] == key
+                && tableDepths[index] == horizon - ply) {
+            return index;
+        }
+        return -1;
+    }
+
+    /**
+     * Stores the value and best move of the position at given ply
+     * in the transposition table.
+     * @param ply the ply of the position
+     * @param value the value of the position
+     * @param move the best move, -1 if there is none
+     */
+    private void store(int ply, long value, int move) {
+        long key = hashes[ply];
+        int index = (int) key & tableMask;
+        tableKeys[index] = key;
+        tableValues[index] = value;
+        tableMoves[index] = move;
+        tableDepths[index] = horizon - ply;
+        tableStamps[index] = generation;
+    }
+
+}
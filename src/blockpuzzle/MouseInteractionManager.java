@@ -1,25 +1,37 @@
 package blockpuzzle;
 
+import javax.swing.*;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
 import java.awt.event.MouseMotionListener;
-import java.awt.Color;
 
 /**
  * A MouseInteractionManager is responsible for detecting mouse clicks and movements.
+ *
+ * Mouse movements are coalesced: a movement is handled after the events
+ * queued before it, and only the latest of the movements queued meanwhile is
+ * handled. So a burst of motion events costs one highlighting update.
  */
 public class MouseInteractionManager implements MouseListener, MouseMotionListener {
     GameManager gameManager;
+    GameEngine engine;
     ScorePanel scorePanel;
     GridPanel gridPanel;
     BlockCombosPanel blockCombosPanel;
+    ReplayRecorder replayRecorder;
 
-    MouseInteractionManager(GameManager gameM, ScorePanel scoreP,
-                            GridPanel gridP, BlockCombosPanel blockCombosP) {
+    // the latest motion event that has not been handled yet, null if none
+    private MouseEvent pendingMotion = null;
+
+    MouseInteractionManager(GameManager gameM, GameEngine gameEngine, ScorePanel scoreP,
+                            GridPanel gridP, BlockCombosPanel blockCombosP,
+                            ReplayRecorder recorder) {
         gameManager = gameM;
+        engine = gameEngine;
         scorePanel = scoreP;
         gridPanel = gridP;
         blockCombosPanel = blockCombosP;
+        replayRecorder = recorder;
     }
 
     @Override
@@ -36,9 +48,10 @@ public class MouseInteractionManager implements MouseListener, MouseMotionListen
             if (blockCombosPanel.isAnyBlockComboSelected()
                     && gameManager.getRotations() > 0) {
                 // rotate selected BlockCombo (if it is rotatable)
-                boolean rotate = blockCombosPanel.getSelectedBlockCombo().tryRotate();
+                boolean rotate = engine.rotate(blockCombosPanel.getSelectedSlot());
                 if (rotate) {
-                    mouseMoved(e);  // this updates highlighted grid cells if necessary
+                    replayRecorder.recordRotate(blockCombosPanel.getSelectedSlot());
+                    handleMotion(e);  // this updates highlighted grid cells if necessary
                 }
                 gameManager.repaint();
             }
@@ -48,36 +61,39 @@ public class MouseInteractionManager implements MouseListener, MouseMotionListen
         // check if player inserts selected BlockCombo
         if (e.getSource() == gridPanel && gridPanel.isMouseOverGrid(e.getPoint())) {
             GridCell clickedCell = gridPanel.getCellUnderMouse(e.getPoint());
-            if (blockCombosPanel.isAnyBlockComboSelected()
-                    && gridPanel.getGrid().canInsertBlockCombo(
-                    clickedCell, blockCombosPanel.getSelectedBlockCombo())) {
-                BlockCombo selectedCombo = blockCombosPanel.getSelectedBlockCombo();
-                // insert selected BlockCombo in Grid
-                gridPanel.getGrid().insertBlockCombo(clickedCell, selectedCombo);
-                // remove selected BlockCombo from openBlockCombos/savedBlockCombo
-                blockCombosPanel.consumeSelectedBlockCombo();
+            int slot = blockCombosPanel.getSelectedSlot();
+            int rotation = slot == -1 ? 0
+                    : engine.getContainer(slot).getContent().getRotationSteps();
+            // insert selected BlockCombo in Grid, this removes it from
+            // openBlockCombos/savedBlockCombo and consumes a rotation if necessary
+            if (slot != -1 && engine.place(slot, clickedCell.getPosX(), clickedCell.getPosY())) {
+                replayRecorder.recordPlace(slot, rotation,
+                        Grid.cellIndex(clickedCell.getPosX(), clickedCell.getPosY()));
                 // deselect the selected BlockCombo
                 blockCombosPanel.deselectBlockCombo();
                 // remove highlighting
                 gridPanel.clearHighlightedCells();
-                // consume one rotation if BlockCombo was rotated
-                if (selectedCombo.isRotated()) {
-                    gameManager.consumeRotation();
-                }
-                // check for game over
-                gameManager.tryGameOver();
             }
             gameManager.repaint();
 
-            ClearedCellsEffect c = new ClearedCellsEffect(gameManager, gridPanel,
-                    scorePanel);
+            ClearedCellsEffect c = new ClearedCellsEffect(gameManager, gridPanel);
             c.tryClearedCellsEffect();
         }
         // check if player selects or saves any BlockCombo
         else if (e.getSource() == blockCombosPanel
                 && e.getButton() == MouseEvent.BUTTON1) {
+            int previousSlot = blockCombosPanel.getSelectedSlot();
             blockCombosPanel.trySelect(e);
+            int slot = blockCombosPanel.getSelectedSlot();
+            if (slot != previousSlot) {
+                replayRecorder.recordSelect(slot);
+            }
+
+            boolean saved = !engine.getSavedBlockCombo().isEmpty();
             blockCombosPanel.trySave(e);
+            if (!saved && !engine.getSavedBlockCombo().isEmpty()) {
+                replayRecorder.recordSave(slot);
+            }
             gameManager.repaint();
         }
     }
@@ -109,6 +125,34 @@ public class MouseInteractionManager implements MouseListener, MouseMotionListen
 
     @Override
     public void mouseMoved(MouseEvent e) {
+        if (pendingMotion != null && pendingMotion.getSource() != e.getSource()) {
+            // the mouse moved to another panel, the former one must see its last movement
+            handleMotion(pendingMotion);
+        }
+        boolean handlingScheduled = pendingMotion != null;
+        pendingMotion = e;
+        if (!handlingScheduled) {
+            SwingUtilities.invokeLater(this::handlePendingMotion);
+        }
+    }
+
+    /**
+     * Handles the latest motion event that has not been handled yet.
+     */
+    private void handlePendingMotion() {
+        MouseEvent e = pendingMotion;
+        pendingMotion = null;
+        if (e != null) {
+            handleMotion(e);
+        }
+    }
+
+    /**
+     * Updates the highlighting of the grid and the BlockCombos to the given
+     * mouse position.
+     * @param e the MouseEvent of the movement
+     */
+    private void handleMotion(MouseEvent e) {
         // check if game is over
         if (gameManager.isGameOver()) {
             // no mouse over effect if game is over
@@ -123,29 +167,17 @@ public class MouseInteractionManager implements MouseListener, MouseMotionListen
 
             // grid cells that would be covered by selected
             // BlockCombo shall be highlighted
-            if (gridPanel.getGrid().canInsertBlockCombo(targetCell, selectedCombo)) {
-                // insert possible: highlight green
-                gridPanel.calculateHighlightedCells(selectedCombo, targetCell,
-                                                    new Color(153, 255, 153));
-            }
-            else {
-                //insert not possible: highlight red
-                gridPanel.calculateHighlightedCells(selectedCombo, targetCell,
-                                                    new Color(255, 153, 153));
-            }
-
-            gameManager.repaint();
+            gridPanel.highlightHover(selectedCombo, targetCell);
+            // the panels repaint only the areas whose highlighting changed
         }
         else if (e.getSource() == gridPanel) {
             // mouse is not over grid or no BlockCombo is selected
             // -> do not highlight any grid cells
             gridPanel.clearHighlightedCells();
-            gameManager.repaint();
         }
         // check if player is hovering over any open or saved BlockCombo
         else if (e.getSource() == blockCombosPanel) {
             blockCombosPanel.highlightBlockComboAreas(e);
-            gameManager.repaint();
         }
 
     }
@@ -0,0 +1,220 @@
+package blockpuzzle;
+
+/**
+ * The MoveGenerator lists all legal moves of a game state into a caller-supplied
+ * int[] buffer, one int per move, without allocating anything.
+ *
+ * A move either places the BlockCombo of a slot, rotated a number of times from
+ * its original formation, with its start block at an anchor cell, or it saves
+ * the open BlockCombo of a slot. It is encoded as
+ * save flag << 13 | slot << 9 | rotation << 7 | anchor.
+ *
+ * Placements are listed by slot, then rotation, then anchor (ascending),
+ * followed by the saves.
+ */
+public final class MoveGenerator {
+    /** The maximum number of legal moves of a game state, i.e. the buffer size needed. */
+    static final int MAXIMUM_MOVES =
+            (GameEngine.SAVED_SLOT + 1) * ComboShape.NUMBER_OF_ROTATIONS * Grid.SIZE * Grid.SIZE
+                    + GameEngine.NUMBER_OF_OPEN_SLOTS;
+
+    private static final int SAVE_FLAG = 1 << 13;
+
+    private MoveGenerator() {
+    }
+
+    /**
+     * Writes all legal moves of the given GameEngine into the buffer.
+     * The fitting anchors are taken from the Grid's PlaceabilityIndex, so
+     * only anchors where the BlockCombo fits are visited.
+     * @param engine the GameEngine
+     * @param moves the buffer, at least MAXIMUM_MOVES long
+     * @return the number of moves, 0 if the game is over
+     */
+    static int generateMoves(GameEngine engine, int[] moves) {
+        if (engine.isGameOver()) {
+            return 0;
+        }
+        PlaceabilityIndex index = engine.getGrid().getPlaceabilityIndex();
+        int numberOfMoves = 0;
+
+        for (int slot = 0; slot <= GameEngine.SAVED_SLOT; slot++) {
+            SingleContainer<BlockCombo> container = engine.getContainer(slot);
+            if (container.isEmpty()) {
+                continue;
+            }
+            BlockCombo combo = container.getContent();
+            ComboShape shape = combo.getShape();
+
+            // rotated BlockCombos can only be placed if the rotation can be paid
+            int reachableRotations = engine.getRotations() > 0 ? shape.getSymmetryOrder() : 1;
+            for (int steps = 0; steps < reachableRotations; steps++) {
+                int rotation = (combo.getOriginalRotation() + steps)
+                        % ComboShape.NUMBER_OF_ROTATIONS;
+                numberOfMoves = addPlacements(slot, steps,
+                        index.getFittingAnchorsLow(shape, rotation),
+                        index.getFittingAnchorsHigh(shape, rotation),
+                        moves, numberOfMoves);
+            }
+        }
+
+        if (engine.getSavedBlockCombo().isEmpty()) {
+            numberOfMoves = addSaves(getOpenMask(engine), moves, numberOfMoves);
+        }
+        return numberOfMoves;
+    }
+
+    /**
+     * Appends all placements of a BlockCombo on the given bitboard to the buffer.
+     * @param slot the slot of the BlockCombo
+     * @param shape the ComboShape of the BlockCombo
+     * @param originalRotation the rotation of the BlockCombo's original formation
+     * @param reachableRotations the number of rotations to be listed (1 if none
+     *                           can be paid, the symmetry order otherwise)
+     * @param low the non-empty cells with indices 0..63
+     * @param high the non-empty cells with indices 64..80
+     * @param moves the buffer
+     * @param numberOfMoves the number of moves already in the buffer
+     * @return the number of moves in the buffer afterwards
+     */
+    static int generatePlacements(int slot, ComboShape shape, int originalRotation,
+                                  int reachableRotations, long low, long high,
+                                  int[] moves, int numberOfMoves) {
+        for (int steps = 0; steps < reachableRotations; steps++) {
+            int rotation = (originalRotation + steps) % ComboShape.NUMBER_OF_ROTATIONS;
+            numberOfMoves = addPlacements(slot, steps,
+                    shape.getFittingAnchorsLow(rotation, low, high),
+                    shape.getFittingAnchorsHigh(rotation, low, high),
+                    moves, numberOfMoves);
+        }
+        return numberOfMoves;
+    }
+
+    /**
+     * Appends the saves of the open BlockCombos in the given slots to the buffer.
+     * @param openMask the slots of the open BlockCombos (bit i set = slot i)
+     * @param moves the buffer
+     * @param numberOfMoves the number of moves already in the buffer
+     * @return the number of moves in the buffer afterwards
+     */
+    static int addSaves(int openMask, int[] moves, int numberOfMoves) {
+        for (int slot = 0; slot < GameEngine.NUMBER_OF_OPEN_SLOTS; slot++) {
+            if ((openMask & (1 << slot)) != 0) {
+                moves[numberOfMoves++] = encodeSave(slot);
+            }
+        }
+        return numberOfMoves;
+    }
+
+    /**
+     * Makes the given move in the game of the given GameEngine.
+     * @param engine the GameEngine
+     * @param move the encoded move
+     * @return true if the move has been made, false if it is illegal
+     */
+    static boolean makeMove(GameEngine engine, int move) {
+        if (isSave(move)) {
+            return engine.save(getSlot(move));
+        }
+        int anchor = getAnchor(move);
+        return engine.place(getSlot(move), getRotation(move),
+                            anchor % Grid.SIZE, anchor / Grid.SIZE);
+    }
+
+    /**
+     * Encodes a placement.
+     * @param slot the slot of the BlockCombo
+     * @param rotation the number of rotations applied to the original formation
+     * @param anchor the cell index of the start block
+     * @return the encoded move
+     */
+    static int encodePlacement(int slot, int rotation, int anchor) {
+        return slot << 9 | rotation << 7 | anchor;
+    }
+
+    /**
+     * Encodes saving the open BlockCombo of given slot.
+     * @param slot the slot of the open BlockCombo
+     * @return the encoded move
+     */
+    static int encodeSave(int slot) {
+        return SAVE_FLAG | slot << 9;
+    }
+
+    /**
+     * Checks if given encoded move saves a BlockCombo.
+     * @param move the encoded move
+     * @return true if the move saves a BlockCombo, false if it places one
+     */
+    static boolean isSave(int move) {
+        return (move & SAVE_FLAG) != 0;
+    }
+
+    /**
+     * Gets the slot of given encoded move.
+     * @param move the encoded move
+     * @return the slot
+     */
+    static int getSlot(int move) {
+        return (move >>> 9) & 0b1111;
+    }
+
+    /**
+     * Gets the rotation of given encoded placement.
+     * @param move the encoded move
+     * @return the number of rotations applied to the original formation
+     */
+    static int getRotation(int move) {
+        return (move >>> 7) & 0b11;
+    }
+
+    /**
+     * Gets the anchor of given encoded placement.
+     * @param move the encoded move
+     * @return the cell index of the start block
+     */
+    static int getAnchor(int move) {
+        return move & 0b111_1111;
+    }
+
+    /**
+     * Appends a placement for every given anchor to the buffer.
+     * @param slot the slot of the BlockCombo
+     * @param steps the number of rotations applied to the original formation
+     * @param anchorsLow the anchors with cell indices 0..63
+     * @param anchorsHigh the anchors with cell indices 64..80
+     * @param moves the buffer
+     * @param numberOfMoves the number of moves already in the buffer
+     * @return the number of moves in the buffer afterwards
+     */
+    private static int addPlacements(int slot, int steps, long anchorsLow, long anchorsHigh,
+                                     int[] moves, int numberOfMoves) {
+        while (anchorsLow != 0) {
+            int anchor = Long.numberOfTrailingZeros(anchorsLow);
+            anchorsLow &= anchorsLow - 1;  // remove lowest set bit
+            moves[numberOfMoves++] = encodePlacement(slot, steps, anchor);
+        }
+        while (anchorsHigh != 0) {
+            int anchor = 64 + Long.numberOfTrailingZeros(anchorsHigh);
+            anchorsHigh &= anchorsHigh - 1;  // remove lowest set bit
+            moves[numberOfMoves++] = encodePlacement(slot, steps, anchor);
+        }
+        return numberOfMoves;
+    }
+
+    /**
+     * Gets the slots of the open BlockCombos of given GameEngine.
+     * @param engine the GameEngine
+     * @return the bitmask of slots (bit i set = slot i contains a BlockCombo)
+     */
+    private static int getOpenMask(GameEngine engine) {
+        int openMask = 0;
+        for (int slot = 0; slot < GameEngine.NUMBER_OF_OPEN_SLOTS; slot++) {
+            if (!engine.getContainer(slot).isEmpty()) {
+                openMask |= 1 << slot;
+            }
+        }
+        return openMask;
+    }
+
+}
@@ -0,0 +1,241 @@
+package blockpuzzle;
+
+import java.util.Arrays;
+
+/**
+ * A MoveJournal records the moves of a game, so they can be undone and redone.
+ *
+ * Each move is stored as a delta of two longs (16 bytes) in one growing array:
+ * the move itself, the BlockCombo it moved, the cleared rows and columns, whether
+ * it started a new round and the counters before the move. Everything else
+ * (the filled cells, the score) follows from these and the game rules.
+ *
+ * Moves behind the current position can be redone. Recording a different
+ * move discards them, recording the same move as the next redoable one keeps them.
+ */
+public class MoveJournal {
+    // number of longs per recorded move
+    private static final int RECORD_SIZE = 2;
+
+    // move record:
+    // bits  0..13: move encoded by the MoveGenerator
+    // bits 14..18: shape id of the moved BlockCombo
+    // bits 19..20: original rotation of the moved BlockCombo
+    // bits 21..29: cleared rows (bit y set = row y)
+    // bits 30..38: cleared columns (bit x set = column x)
+    // bit      39: a new round has been started after the move
+    // bits 40..42: remaining rounds for the saved BlockCombo before the move
+    // counters record: rotations << 32 | nextRotation before the move
+    private long[] records = new long[64 * RECORD_SIZE];
+    // number of recorded moves (including the redoable ones)
+    private int size = 0;
+    // number of moves that can be undone
+    private int position = 0;
+
+    /**
+     * Creates a move record.
+     * @param move the move encoded by the MoveGenerator
+     * @param combo the moved BlockCombo
+     * @param clearedRows the rows cleared by the move
+     * @param clearedColumns the columns cleared by the move
+     * @param newRound specifies if a new round has been started after the move
+     * @param remainingRounds the remaining rounds for the saved BlockCombo before the move
+     * @return the move record
+     */
+    static long encodeMove(int move, BlockCombo combo, int clearedRows, int clearedColumns,
+                           boolean newRound, int remainingRounds) {
+        return move
+                | (long) combo.getShape().getId() << 14
+                | (long) combo.getOriginalRotation() << 19
+                | (long) clearedRows << 21
+                | (long) clearedColumns << 30
+                | (newRound ? 1L : 0L) << 39
+                | (long) remainingRounds << 40;
+    }
+
+    /**
+     * Creates a counters record.
+     * @param rotations the number of rotations before the move
+     * @param nextRotation nextRotation before the move
+     * @return the counters record
+     */
+    static long encodeCounters(int rotations, int nextRotation) {
+        return (long) rotations << 32 | nextRotation;
+    }
+
+    /**
+     * Gets the move (encoded by the MoveGenerator) of given move record.
+     * @param moveRecord the move record
+     * @return the move
+     */
+    static int getMove(long moveRecord) {
+        return (int) (moveRecord & 0x3FFF);
+    }
+
+    /**
+     * Gets the ComboShape of the BlockCombo moved by given move record.
+     * @param moveRecord the move record
+     * @return the ComboShape
+     */
+    static ComboShape getShape(long moveRecord) {
+        return ComboShapeCatalog.getShape((int) (moveRecord >>> 14) & 0b1_1111);
+    }
+
+    /**
+     * Gets the original rotation of the BlockCombo moved by given move record.
+     * @param moveRecord the move record
+     * @return the original rotation (0..3)
+     */
+    static int getOriginalRotation(long moveRecord) {
+        return (int) (moveRecord >>> 19) & 0b11;
+    }
+
+    /**
+     * Gets the rows cleared by given move record.
+     * @param moveRecord the move record
+     * @return the bitmask of cleared rows (bit y set = row y cleared)
+     */
+    static int getClearedRows(long moveRecord) {
+        return (int) (moveRecord >>> 21) & 0x1FF;
+    }
+
+    /**
+     * Gets the columns cleared by given move record.
+     * @param moveRecord the move record
+     * @return the bitmask of cleared columns (bit x set = column x cleared)
+     */
+    static int getClearedColumns(long moveRecord) {
+        return (int) (moveRecord >>> 30) & 0x1FF;
+    }
+
+    /**
+     * Checks if a new round has been started after the move of given move record.
+     * @param moveRecord the move record
+     * @return true if a new round has been started, false otherwise
+     */
+    static boolean startedNewRound(long moveRecord) {
+        return (moveRecord & 1L << 39) != 0;
+    }
+
+    /**
+     * Gets the remaining rounds for the saved BlockCombo before given move record.
+     * @param moveRecord the move record
+     * @return the remaining rounds
+     */
+    static int getRemainingRounds(long moveRecord) {
+        return (int) (moveRecord >>> 40) & 0b111;
+    }
+
+    /**
+     * Gets the number of rotations before the move of given counters record.
+     * @param countersRecord the counters record
+     * @return the rotations
+     */
+    static int getRotations(long countersRecord) {
+        return (int) (countersRecord >>> 32);
+    }
+
+    /**
+     * Gets nextRotation before the move of given counters record.
+     * @param countersRecord the counters record
+     * @return nextRotation
+     */
+    static int getNextRotation(long countersRecord) {
+        return (int) countersRecord;
+    }
+
+    /**
+     * Records a move at the current position.
+     * @param moveRecord the move record
+     * @param countersRecord the counters record
+     */
+    void record(long moveRecord, long countersRecord) {
+        int index = position * RECORD_SIZE;
+        if (position < size && records[index] == moveRecord
+                && records[index + 1] == countersRecord) {
+            // the move has been redone, keep the following moves
+            position += 1;
+            return;
+        }
+
+        if (index + RECORD_SIZE > records.length) {
+            records = Arrays.copyOf(records, records.length * 2);
+        }
+        records[index] = moveRecord;
+        records[index + 1] = countersRecord;
+        position += 1;
+        size = position;
+    }
+
+    /**
+     * Checks if a move can be undone.
+     * @return true if a move has been recorded before the current position
+     */
+    boolean canUndo() {
+        return position > 0;
+    }
+
+    /**
+     * Checks if a move can be redone.
+     * @return true if a move has been recorded after the current position
+     */
+    boolean canRedo() {
+        return position < size;
+    }
+
+    /**
+     * Steps back behind the last move, which can be redone afterwards.
+     * Throws IllegalStateException if no move can be undone.
+     */
+    void stepBack() {
+        if (!canUndo()) {
+            throw new IllegalStateException("stepBack() should only " +
+                    "be called if a move can be undone.");
+        }
+        position -= 1;
+    }
+
+    /**
+     * Gets the move record of the last move.
+     * Only meaningful if canUndo() is true.
+     * @return the move record
+     */
+    long getLastMoveRecord() {
+        return records[(position - 1) * RECORD_SIZE];
+    }
+
+    /**
+     * Gets the counters record of the last move.
+     * Only meaningful if canUndo() is true.
+     * @return the counters record
+     */
+    long getLastCountersRecord() {
+        return records[(position - 1) * RECORD_SIZE + 1];
+    }
+
+    /**
+     * Gets the move record of the next move that can be redone.
+     * Only meaningful if canRedo() is true.
+     * @return the move record
+     */
+    long getNextMoveRecord() {
+        return records[position * RECORD_SIZE];
+    }
+
+    /**
+     * Gets the number of moves that can be undone.
+     * @return the position
+     */
+    int getPosition() {
+        return position;
+    }
+
+    /**
+     * Removes all recorded moves.
+     */
+    void clear() {
+        size = 0;
+        position = 0;
+    }
+
+}
@@ -0,0 +1,22 @@
+package blockpuzzle;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * A MovePolicy decides which move is made next in a game played by the
+ * BatchSimulator. A move is either placing a BlockCombo or saving one.
+ *
+ * Each simulation worker owns its own MovePolicy instance, so implementations
+ * may keep scratch buffers but must not share mutable state between instances.
+ */
+public interface MovePolicy {
+
+    /**
+     * Makes one move in the game of the given GameEngine.
+     * @param engine the GameEngine of the game, its game is not over
+     * @param random the random number generator owned by the calling worker
+     * @return true if a move has been made, false if no legal move exists
+     */
+    boolean makeMove(GameEngine engine, RandomGenerator random);
+
+}
@@ -0,0 +1,93 @@
+package blockpuzzle;
+
+/**
+ * A PlaceabilityIndex remembers for each ComboShape and rotation at which
+ * anchors of a Grid it can be inserted and how many such anchors exist.
+ *
+ * An entry is brought up to date lazily when it is queried: if the Grid changed
+ * since the entry was last updated, all anchors are computed again at once
+ * with one shift per block, see ComboShape.getFittingAnchorsLow().
+ * So repeated queries between two moves (e.g. game over checks) cost
+ * constant time, and a move only costs a few shifts per entry in play.
+ */
+public class PlaceabilityIndex {
+    private static final int NUMBER_OF_ENTRIES =
+            ComboShapeCatalog.getNumberOfShapes() * ComboShape.NUMBER_OF_ROTATIONS;
+
+    private final Grid grid;
+
+    // entry = shape id * NUMBER_OF_ROTATIONS + rotation
+    private final boolean[] initialized = new boolean[NUMBER_OF_ENTRIES];
+    // anchors where the shape fits
+    private final long[] fittingAnchorsLow = new long[NUMBER_OF_ENTRIES];
+    private final long[] fittingAnchorsHigh = new long[NUMBER_OF_ENTRIES];
+    private final int[] fittingAnchorCounts = new int[NUMBER_OF_ENTRIES];
+    // the Grid's bitboard an entry was last updated for
+    private final long[] knownOccupiedLow = new long[NUMBER_OF_ENTRIES];
+    private final long[] knownOccupiedHigh = new long[NUMBER_OF_ENTRIES];
+
+    PlaceabilityIndex(Grid grid) {
+        this.grid = grid;
+    }
+
+    /**
+     * Gets the number of anchors where given ComboShape can be inserted.
+     * @param shape the ComboShape
+     * @param rotation the number of rotations by 90° to the right (0..3)
+     * @return the number of fitting anchors
+     */
+    int getFittingAnchorCount(ComboShape shape, int rotation) {
+        return fittingAnchorCounts[update(shape, rotation)];
+    }
+
+    /**
+     * Gets the lower word of the bitmask of all anchors where given
+     * ComboShape can be inserted.
+     * @param shape the ComboShape
+     * @param rotation the number of rotations by 90° to the right (0..3)
+     * @return the fitting anchors with cell indices 0..63
+     */
+    long getFittingAnchorsLow(ComboShape shape, int rotation) {
+        return fittingAnchorsLow[update(shape, rotation)];
+    }
+
+    /**
+     * Gets the higher word of the bitmask of all anchors where given
+     * ComboShape can be inserted.
+     * @param shape the ComboShape
+     * @param rotation the number of rotations by 90° to the right (0..3)
+     * @return the fitting anchors with cell indices 64..80
+     */
+    long getFittingAnchorsHigh(ComboShape shape, int rotation) {
+        return fittingAnchorsHigh[update(shape, rotation)];
+    }
+
+    /**
+     * Brings the entry of given ComboShape and rotation up to date with the Grid.
+     * @param shape the ComboShape
+     * @param rotation the number of rotations by 90° to the right (0..3)
+     * @return the index of the entry
+     */
+    private int update(ComboShape shape, int rotation) {
+        int entry = shape.getId() * ComboShape.NUMBER_OF_ROTATIONS + rotation;
+        long occupiedLow = grid.getOccupiedLow();
+        long occupiedHigh = grid.getOccupiedHigh();
+
+        if (initialized[entry] && occupiedLow == knownOccupiedLow[entry]
+                && occupiedHigh == knownOccupiedHigh[entry]) {
+            // entry is up to date
+            return entry;
+        }
+        initialized[entry] = true;
+
+        long fittingLow = shape.getFittingAnchorsLow(rotation, occupiedLow, occupiedHigh);
+        long fittingHigh = shape.getFittingAnchorsHigh(rotation, occupiedLow, occupiedHigh);
+        fittingAnchorsLow[entry] = fittingLow;
+        fittingAnchorsHigh[entry] = fittingHigh;
+        fittingAnchorCounts[entry] = Long.bitCount(fittingLow) + Long.bitCount(fittingHigh);
+        knownOccupiedLow[entry] = occupiedLow;
+        knownOccupiedHigh[entry] = occupiedHigh;
+        return entry;
+    }
+
+}
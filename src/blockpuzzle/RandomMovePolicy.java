@@ -0,0 +1,22 @@
+package blockpuzzle;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * A RandomMovePolicy makes a uniformly chosen move out of all legal moves.
+ * Rotated placements are only considered if the player has rotations left.
+ */
+public class RandomMovePolicy implements MovePolicy {
+    // legal moves of the current turn, see MoveGenerator
+    private final int[] moves = new int[MoveGenerator.MAXIMUM_MOVES];
+
+    @Override
+    public boolean makeMove(GameEngine engine, RandomGenerator random) {
+        int numberOfMoves = MoveGenerator.generateMoves(engine, moves);
+        if (numberOfMoves == 0) {
+            return false;
+        }
+        return MoveGenerator.makeMove(engine, moves[random.nextInt(numberOfMoves)]);
+    }
+
+}
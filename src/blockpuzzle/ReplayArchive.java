@@ -0,0 +1,356 @@
+package blockpuzzle;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * A ReplayArchive stores many replays (see ReplayFormat) in one file:
+ * a header, the replays one after another and an index of their offsets.
+ *
+ * The header of HEADER_SIZE bytes contains: magic (int), version (short),
+ * reserved (short), number of games (int), offset of the index (long).
+ * The index contains the offset of every replay followed by the offset
+ * of the index itself, so replay i ends where replay i + 1 starts.
+ *
+ * The archive is read with memory mapped segments of at most maximumSegmentSize
+ * bytes, which are passed directly to ReplayVisitors. So a sweep over an archive
+ * reads each byte once and creates no objects per game or action.
+ * Different index ranges can be visited by different threads at the same time.
+ */
+public class ReplayArchive implements Closeable {
+    static final int MAGIC = 0x42505241;  // "BPRA"
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 4 + 2 + 2 + 4 + 8;
+
+    // replays are mapped in segments of at most this size
+    private static final long maximumSegmentSize = 1L << 30;
+    // number of index ranges per thread when visiting in parallel
+    private static final int rangesPerThread = 4;
+
+    private final FileChannel channel;
+    private final int numberOfGames;
+    // offsets of all replays and of the index
+    private final LongBuffer offsets;
+
+    private ReplayArchive(FileChannel channel) throws IOException {
+        this.channel = channel;
+
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        while (header.hasRemaining() && channel.read(header) != -1) {
+            // read until header is complete or file ends
+        }
+        header.flip();
+        if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC
+                || header.getShort() != VERSION) {
+            throw new IOException("The file is not a replay archive.");
+        }
+        header.getShort();  // reserved
+        numberOfGames = header.getInt();
+        long indexOffset = header.getLong();
+
+        long indexSize = (numberOfGames + 1L) * Long.BYTES;
+        if (numberOfGames < 0 || indexOffset + indexSize != channel.size()) {
+            throw new IOException("The index of the replay archive is corrupt.");
+        }
+        offsets = channel.map(FileChannel.MapMode.READ_ONLY, indexOffset, indexSize)
+                .asLongBuffer();
+    }
+
+    /**
+     * Opens the replay archive in given file.
+     * @param file the archive file
+     * @return the opened ReplayArchive
+     * @throws IOException if the file cannot be read or is not a replay archive
+     */
+    static ReplayArchive open(File file) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            return new ReplayArchive(channel);
+        }
+        catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Creates a replay archive containing the given replay files in given order.
+     * An incomplete last record of a replay is left out.
+     * @param file the archive file, it is overwritten if it exists
+     * @param replays the replay files
+     * @throws IOException if writing fails or a file is not a replay
+     */
+    static void create(File file, List<File> replays) throws IOException {
+        long[] replayOffsets = new long[replays.size() + 1];
+
+        try (FileChannel output = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            output.position(HEADER_SIZE);
+            for (int i = 0; i < replays.size(); i++) {
+                replayOffsets[i] = output.position();
+                appendReplay(output, replays.get(i).toPath());
+            }
+            replayOffsets[replays.size()] = output.position();
+
+            // write the index behind the replays
+            ByteBuffer index = ByteBuffer.allocate(replayOffsets.length * Long.BYTES);
+            index.asLongBuffer().put(replayOffsets);
+            writeFully(output, index);
+
+            // the header is written last, so an interrupted archive cannot be opened
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putShort(VERSION).putShort((short) 0)
+                    .putInt(replays.size()).putLong(replayOffsets[replays.size()]);
+            header.flip();
+            output.position(0);
+            writeFully(output, header);
+        }
+    }
+
+    /**
+     * Gets the number of games in this archive.
+     * @return the numberOfGames
+     */
+    int getNumberOfGames() {
+        return numberOfGames;
+    }
+
+    /**
+     * Visits the games from (inclusive) to (exclusive) in index order.
+     * Can be called by multiple threads at the same time.
+     * @param from the index of the first game
+     * @param to the index after the last game
+     * @param visitor the ReplayVisitor
+     * @throws IOException if the archive cannot be read
+     */
+    void visit(int from, int to, ReplayVisitor visitor) throws IOException {
+        if (from < 0 || from > to || to > numberOfGames) {
+            throw new IllegalArgumentException("Invalid game range " + from + ".." + to + ".");
+        }
+        MappedByteBuffer segment = null;
+        long segmentStart = 0;
+
+        for (int game = from; game < to; game++) {
+            long start = offsets.get(game);
+            long end = offsets.get(game + 1);
+            if (segment == null || end > segmentStart + segment.capacity()) {
+                // map the next segment starting with this game
+                long size = Math.max(end - start,
+                        Math.min(offsets.get(to) - start, maximumSegmentSize));
+                segment = channel.map(FileChannel.MapMode.READ_ONLY, start, size);
+                segmentStart = start;
+            }
+
+            int position = (int) (start - segmentStart);
+            int limit = (int) (end - segmentStart);
+            if (end - start < ReplayFormat.HEADER_SIZE
+                    || segment.getInt(position) != ReplayFormat.MAGIC
+                    || segment.getShort(position + 4) != ReplayFormat.FORMAT_VERSION) {
+                throw new IOException("Game " + game + " of the replay archive is corrupt.");
+            }
+            visitor.startGame(game, segment.getLong(position + 8), segment.getShort(position + 6));
+            for (int record = position + ReplayFormat.HEADER_SIZE;
+                 record + ReplayFormat.RECORD_SIZE <= limit;
+                 record += ReplayFormat.RECORD_SIZE) {
+                visitor.visitAction(segment, record);
+            }
+            visitor.endGame(game);
+        }
+    }
+
+    /**
+     * Visits all games with the given number of threads. The games are split
+     * into index ranges, each range is visited by its own ReplayVisitor.
+     * @param threads the number of threads
+     * @param visitorFactory creates the ReplayVisitor of a range
+     * @return the ReplayVisitors of all ranges in index order
+     * @throws IOException if the archive cannot be read
+     */
+    <V extends ReplayVisitor> List<V> visitParallel(int threads, Supplier<V> visitorFactory)
+            throws IOException {
+        int numberOfRanges = Math.max(1, Math.min(numberOfGames, threads * rangesPerThread));
+        List<V> visitors = new ArrayList<>();
+        List<Callable<Void>> tasks = new ArrayList<>();
+        for (int range = 0; range < numberOfRanges; range++) {
+            int from = (int) ((long) numberOfGames * range / numberOfRanges);
+            int to = (int) ((long) numberOfGames * (range + 1) / numberOfRanges);
+            V visitor = visitorFactory.get();
+            visitors.add(visitor);
+            tasks.add(() -> {
+                visit(from, to, visitor);
+                return null;
+            });
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            for (Future<Void> future : executor.invokeAll(tasks)) {
+                future.get();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Visiting the replay archive was interrupted.");
+        }
+        catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException ioException) {
+                throw ioException;
+            }
+            throw new IllegalStateException("A ReplayVisitor failed.", e.getCause());
+        }
+        finally {
+            executor.shutdown();
+        }
+        return visitors;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Appends the replay in given file to the archive.
+     * @param output the channel of the archive
+     * @param replay the replay file
+     * @throws IOException if reading or writing fails or the file is not a replay
+     */
+    private static void appendReplay(FileChannel output, Path replay) throws IOException {
+        try (FileChannel input = FileChannel.open(replay, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(ReplayFormat.HEADER_SIZE);
+            input.read(header, 0);
+            if (header.hasRemaining() || header.getInt(0) != ReplayFormat.MAGIC) {
+                throw new IOException(replay + " is not a replay.");
+            }
+
+            // leave out an incomplete last record
+            long records = (input.size() - ReplayFormat.HEADER_SIZE) / ReplayFormat.RECORD_SIZE;
+            long length = ReplayFormat.HEADER_SIZE + records * ReplayFormat.RECORD_SIZE;
+            long transferred = 0;
+            while (transferred < length) {
+                transferred += input.transferTo(transferred, length - transferred, output);
+            }
+        }
+    }
+
+    /**
+     * Writes all remaining bytes of given buffer to given channel.
+     * @param output the channel
+     * @param buffer the buffer
+     * @throws IOException if writing fails
+     */
+    private static void writeFully(FileChannel output, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            output.write(buffer);
+        }
+    }
+
+    /**
+     * A Verifier plays the visited games with a ReplayPlayer and counts the
+     * games whose actions all have their recorded outcome.
+     */
+    private static class Verifier implements ReplayVisitor {
+        private final ReplayPlayer player = new ReplayPlayer();
+        private final List<String> failures = new ArrayList<>();
+        private int games = 0;
+        private long actions = 0;
+
+        // state of the current game
+        private long seed;
+        private int rulesVersion;
+        private int gameActions;
+        private int firstMismatch;
+
+        @Override
+        public void startGame(int game, long gameSeed, int gameRulesVersion) {
+            player.startGame(gameSeed);
+            seed = gameSeed;
+            rulesVersion = gameRulesVersion;
+            gameActions = 0;
+            firstMismatch = -1;
+        }
+
+        @Override
+        public void visitAction(ByteBuffer records, int position) {
+            if (firstMismatch != -1) {
+                // the game has diverged, its further actions are meaningless
+                return;
+            }
+            gameActions += 1;
+            if (!player.playAction(records, position)) {
+                firstMismatch = gameActions - 1;
+            }
+        }
+
+        @Override
+        public void endGame(int game) {
+            games += 1;
+            actions += gameActions;
+            if (firstMismatch != -1) {
+                GameEngine engine = player.getEngine();
+                failures.add("game " + game + ": " + new ReplayResult(seed, rulesVersion,
+                        gameActions, engine.getScore(), engine.isGameOver(), firstMismatch));
+            }
+        }
+    }
+
+    /**
+     * Packs or verifies replay archives from the command line.
+     * Arguments: pack [archive] [replay files or directories...]
+     *        or: verify [archive] [threads]
+     * @param args the command line arguments
+     * @throws IOException if reading or writing fails
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length >= 3 && args[0].equals("pack")) {
+            String[] paths = new String[args.length - 2];
+            System.arraycopy(args, 2, paths, 0, paths.length);
+            List<File> replays = ReplayPlayer.findReplays(paths);
+            create(new File(args[1]), replays);
+            System.out.println("packed " + replays.size() + " replays into " + args[1]);
+        }
+        else if (args.length >= 2 && args[0].equals("verify")) {
+            int threads = args.length > 2 ? Integer.parseInt(args[2])
+                    : Runtime.getRuntime().availableProcessors();
+            try (ReplayArchive archive = open(new File(args[1]))) {
+                long start = System.nanoTime();
+                List<Verifier> verifiers = archive.visitParallel(threads, Verifier::new);
+                long elapsedNanos = Math.max(1, System.nanoTime() - start);
+
+                int games = 0;
+                int failed = 0;
+                long actions = 0;
+                for (Verifier verifier : verifiers) {
+                    games += verifier.games;
+                    failed += verifier.failures.size();
+                    actions += verifier.actions;
+                    verifier.failures.forEach(System.out::println);
+                }
+                System.out.printf("games: %d, verified: %d, failed: %d, threads: %d%n",
+                        games, games - failed, failed, threads);
+                System.out.printf("actions: %d, time: %.3f s, throughput: %.0f actions/s, "
+                                + "%.1f MB/s%n", actions, elapsedNanos / 1e9,
+                        actions * 1e9 / elapsedNanos,
+                        archive.channel.size() * 1e3 / elapsedNanos);
+            }
+        }
+        else {
+            throw new IllegalArgumentException("Usage: pack [archive] [replays...] "
+                    + "or verify [archive] [threads]");
+        }
+    }
+
+}
@@ -0,0 +1,45 @@
+package blockpuzzle;
+
+/**
+ * ReplayFormat describes the binary format of a replay file, which records
+ * all actions of one game in the order the player made them.
+ *
+ * A replay starts with a header of HEADER_SIZE bytes:
+ * magic (int), format version (short), rules version (short), seed (long).
+ * It is followed by one record of RECORD_SIZE bytes per action:
+ * action (byte, GAME_OVER_FLAG set if the game is over afterwards), slot (byte),
+ * rotation (byte), anchor (byte), score afterwards (int),
+ * state hash afterwards (long). All values are big-endian.
+ *
+ * Since the GameEngine's state hash is recorded after every action,
+ * a player can detect the first action whose outcome differs.
+ */
+public final class ReplayFormat {
+    static final int MAGIC = 0x42505250;  // "BPRP"
+    static final short FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 4 + 2 + 2 + 8;
+    static final int RECORD_SIZE = 4 + 4 + 8;
+
+    // actions
+    static final byte SELECT = 1;
+    static final byte ROTATE = 2;
+    static final byte SAVE = 3;
+    static final byte PLACE = 4;
+    static final byte UNDO = 5;
+    static final byte REDO = 6;
+    static final int ACTION_MASK = 0x7F;
+    static final int GAME_OVER_FLAG = 0x80;
+
+    private ReplayFormat() {
+    }
+
+    /**
+     * Gets the file name of the replay of a game.
+     * @param seed the seed of the game
+     * @return the file name
+     */
+    static String getFileName(long seed) {
+        return String.format("%016x.replay", seed);
+    }
+
+}
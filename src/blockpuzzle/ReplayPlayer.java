@@ -0,0 +1,202 @@
+package blockpuzzle;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A ReplayPlayer plays replays (see ReplayFormat) headless with the current
+ * GameEngine rules and verifies that every action has its recorded outcome.
+ * So replays of real games reproduce reported bugs and show which games
+ * play differently after a rule change.
+ *
+ * A ReplayPlayer reuses its GameEngine for all replays, so it must not be
+ * used by multiple threads at once.
+ */
+public class ReplayPlayer {
+    private final GameEngine engine = new GameEngine(0);
+    // the slot selected by the last SELECT action, -1 if none
+    private int selectedSlot = -1;
+
+    /**
+     * Plays the replay read from given stream until its end or the first
+     * action whose outcome differs from the recording.
+     * An incomplete last record (e.g. after a crash) is ignored.
+     * @param inputStream the stream the replay is read from, it is not closed
+     * @return the ReplayResult
+     * @throws IOException if reading fails or the stream does not contain a replay
+     */
+    ReplayResult play(InputStream inputStream) throws IOException {
+        DataInputStream input = new DataInputStream(new BufferedInputStream(inputStream));
+        if (input.readInt() != ReplayFormat.MAGIC
+                || input.readShort() != ReplayFormat.FORMAT_VERSION) {
+            throw new IOException("The stream does not contain a replay.");
+        }
+        int rulesVersion = input.readShort();
+        long seed = input.readLong();
+        startGame(seed);
+
+        byte[] record = new byte[ReplayFormat.RECORD_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        int actions = 0;
+        int firstMismatch = -1;
+        while (input.readNBytes(record, 0, record.length) == record.length) {
+            actions += 1;
+            if (!playAction(buffer, 0)) {
+                firstMismatch = actions - 1;
+                break;
+            }
+        }
+        return new ReplayResult(seed, rulesVersion, actions, engine.getScore(),
+                                engine.isGameOver(), firstMismatch);
+    }
+
+    /**
+     * Plays the replay in given file, see play(InputStream).
+     * @param file the replay file
+     * @return the ReplayResult
+     * @throws IOException if reading fails or the file does not contain a replay
+     */
+    ReplayResult play(File file) throws IOException {
+        try (FileInputStream inputStream = new FileInputStream(file)) {
+            return play(inputStream);
+        }
+    }
+
+    /**
+     * Starts a new game with given seed.
+     * @param seed the seed of the replayed game
+     */
+    void startGame(long seed) {
+        engine.restart(seed);
+        selectedSlot = -1;
+    }
+
+    /**
+     * Plays the action of the record at given position of the buffer and checks
+     * if its outcome is the recorded one.
+     * @param buffer the buffer containing the record
+     * @param position the position of the record in the buffer
+     * @return true if the action is legal and its outcome matches, false otherwise
+     */
+    boolean playAction(ByteBuffer buffer, int position) {
+        int action = buffer.get(position) & 0xFF;
+        int slot = buffer.get(position + 1);
+        int rotation = buffer.get(position + 2);
+        int anchor = buffer.get(position + 3);
+
+        boolean legal = switch (action & ReplayFormat.ACTION_MASK) {
+            case ReplayFormat.SELECT -> select(slot);
+            case ReplayFormat.ROTATE -> engine.rotate(slot);
+            case ReplayFormat.SAVE -> deselectIf(engine.save(slot));
+            case ReplayFormat.PLACE -> deselectIf(engine.place(slot, rotation,
+                    anchor % Grid.SIZE, anchor / Grid.SIZE));
+            case ReplayFormat.UNDO -> deselectIf(engine.undo());
+            case ReplayFormat.REDO -> deselectIf(engine.redo());
+            default -> false;
+        };
+
+        return legal
+                && engine.isGameOver() == ((action & ReplayFormat.GAME_OVER_FLAG) != 0)
+                && engine.getScore() == buffer.getInt(position + 4)
+                && engine.getStateHash() == buffer.getLong(position + 8);
+    }
+
+    /**
+     * Gets the GameEngine the replays are played with.
+     * @return the engine
+     */
+    GameEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Selects the BlockCombo in given slot like the BlockCombosPanel does:
+     * the formerly selected BlockCombo is rotated back.
+     * @param slot the slot
+     * @return true if the slot contains a BlockCombo, false otherwise
+     */
+    private boolean select(int slot) {
+        if (slot < 0 || slot > GameEngine.SAVED_SLOT || engine.getContainer(slot).isEmpty()) {
+            return false;
+        }
+        if (selectedSlot != -1) {
+            engine.resetRotation(selectedSlot);
+        }
+        selectedSlot = slot;
+        return true;
+    }
+
+    /**
+     * Removes the selection if given action succeeded, like the panels do.
+     * @param succeeded specifies if the action succeeded
+     * @return succeeded
+     */
+    private boolean deselectIf(boolean succeeded) {
+        if (succeeded) {
+            selectedSlot = -1;
+        }
+        return succeeded;
+    }
+
+    /**
+     * Collects the replay files of given paths.
+     * @param paths replay files or directories containing replay files
+     * @return the replay files (the files of a directory in name order)
+     */
+    static List<File> findReplays(String[] paths) {
+        List<File> files = new ArrayList<>();
+        for (String path : paths) {
+            File file = new File(path);
+            File[] replays = file.listFiles((dir, name) -> name.endsWith(".replay"));
+            if (replays != null) {
+                Arrays.sort(replays);
+                files.addAll(List.of(replays));
+            }
+            else {
+                files.add(file);
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Plays replays from the command line and prints every replay that does
+     * not match its recording, followed by a summary.
+     * Arguments: replay files or directories containing replay files
+     * (default: the directory "Replays")
+     * @param args the command line arguments
+     */
+    public static void main(String[] args) {
+        List<File> files = findReplays(args.length > 0 ? args : new String[] {"Replays"});
+
+        ReplayPlayer player = new ReplayPlayer();
+        int verified = 0;
+        long actions = 0;
+        long start = System.nanoTime();
+        for (File file : files) {
+            try {
+                ReplayResult result = player.play(file);
+                actions += result.getActions();
+                if (result.isVerified()) {
+                    verified += 1;
+                }
+                else {
+                    System.out.println(file.getName() + ": " + result);
+                }
+            }
+            catch (IOException e) {
+                System.out.println(file.getName() + ": " + e.getMessage());
+            }
+        }
+        long elapsedNanos = Math.max(1, System.nanoTime() - start);
+
+        System.out.printf("replays: %d, verified: %d, failed: %d%n",
+                files.size(), verified, files.size() - verified);
+        System.out.printf("actions: %d, time: %.3f s, throughput: %.0f actions/s%n",
+                actions, elapsedNanos / 1e9, actions * 1e9 / elapsedNanos);
+    }
+
+}
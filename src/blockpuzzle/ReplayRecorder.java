@@ -0,0 +1,254 @@
+package blockpuzzle;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A ReplayRecorder appends the actions of the current game to its replay file,
+ * see ReplayFormat. Every game has its own file named after its seed, so a
+ * restored game can continue its replay.
+ *
+ * Records are created on the EDT, where the engine's state is read, and are
+ * written by the recorder's own writer thread, so the EDT never waits for the
+ * file. Opening and closing the replay run on the writer thread as well, so
+ * all file operations happen in the order they have been requested.
+ * Each record is flushed when it is written, so a replay contains all
+ * actions up to a crash. If writing fails, recording stops for the current game.
+ */
+public class ReplayRecorder {
+    private final GameEngine engine;
+    private final File directory;
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Replay writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // stream of the current replay, null if the current game is not recorded,
+    // only used by the writer thread
+    private DataOutputStream output = null;
+
+    ReplayRecorder(GameEngine gameEngine, File replayDirectory) {
+        engine = gameEngine;
+        directory = replayDirectory;
+    }
+
+    /**
+     * Starts the replay of the engine's current game, which must not have any
+     * actions yet. An existing replay with the same seed is overwritten.
+     * Must be called on the EDT.
+     */
+    void startGame() {
+        long seed = engine.getSeed();
+        writer.submit(() -> startGame(seed));
+    }
+
+    /**
+     * Creates the replay of the game with given seed. Runs on the writer thread.
+     * @param seed the seed of the game
+     */
+    private void startGame(long seed) {
+        closeOutput();
+        directory.mkdir();  // does nothing if directory already exists
+        File file = new File(directory, ReplayFormat.getFileName(seed));
+
+        try {
+            output = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(file)));
+            output.writeInt(ReplayFormat.MAGIC);
+            output.writeShort(ReplayFormat.FORMAT_VERSION);
+            output.writeShort(GameEngine.RULES_VERSION);
+            output.writeLong(seed);
+            output.flush();
+        }
+        catch (IOException e) {
+            System.err.println("An error occurred while creating the replay file.");
+            e.printStackTrace();
+            closeOutput();
+        }
+    }
+
+    /**
+     * Continues the replay of the engine's current game, e.g. after it has been
+     * restored from a Savegame. The game is not recorded if its replay is
+     * missing or does not end with the current game state.
+     * Must be called on the EDT.
+     */
+    void continueGame() {
+        long seed = engine.getSeed();
+        long stateHash = engine.getStateHash();
+        writer.submit(() -> continueGame(seed, stateHash));
+    }
+
+    /**
+     * Opens the replay of the game with given seed for appending if it ends
+     * with given state. Runs on the writer thread.
+     * @param seed the seed of the game
+     * @param currentStateHash the state hash of the game
+     */
+    private void continueGame(long seed, long currentStateHash) {
+        closeOutput();
+        File file = new File(directory, ReplayFormat.getFileName(seed));
+        if (!file.exists()) {
+            return;
+        }
+
+        try (RandomAccessFile replay = new RandomAccessFile(file, "rw")) {
+            if (replay.length() < ReplayFormat.HEADER_SIZE
+                    || replay.readInt() != ReplayFormat.MAGIC
+                    || replay.readShort() != ReplayFormat.FORMAT_VERSION
+                    || replay.readShort() != GameEngine.RULES_VERSION
+                    || replay.readLong() != seed) {
+                return;
+            }
+
+            // drop an incomplete last record
+            long records = (replay.length() - ReplayFormat.HEADER_SIZE)
+                    / ReplayFormat.RECORD_SIZE;
+            long length = ReplayFormat.HEADER_SIZE + records * ReplayFormat.RECORD_SIZE;
+            replay.setLength(length);
+
+            // the replay must end where the restored game continues
+            long stateHash = new GameEngine(seed).getStateHash();
+            if (records > 0) {
+                replay.seek(length - Long.BYTES);
+                stateHash = replay.readLong();
+            }
+            if (stateHash != currentStateHash) {
+                return;
+            }
+        }
+        catch (IOException e) {
+            System.err.println("An error occurred while reading the replay file.");
+            e.printStackTrace();
+            return;
+        }
+
+        try {
+            output = new DataOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(file, true)));
+        }
+        catch (IOException e) {
+            System.err.println("An error occurred while opening the replay file.");
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Records that the BlockCombo in given slot has been selected.
+     * @param slot the slot
+     */
+    void recordSelect(int slot) {
+        record(ReplayFormat.SELECT, slot, 0, 0);
+    }
+
+    /**
+     * Records that the BlockCombo in given slot has been rotated.
+     * @param slot the slot
+     */
+    void recordRotate(int slot) {
+        record(ReplayFormat.ROTATE, slot, 0, 0);
+    }
+
+    /**
+     * Records that the open BlockCombo in given slot has been saved.
+     * @param slot the slot
+     */
+    void recordSave(int slot) {
+        record(ReplayFormat.SAVE, slot, 0, 0);
+    }
+
+    /**
+     * Records that the BlockCombo in given slot has been placed.
+     * @param slot the slot
+     * @param rotation the number of rotations applied to the original formation
+     * @param anchor the cell index of the start block
+     */
+    void recordPlace(int slot, int rotation, int anchor) {
+        record(ReplayFormat.PLACE, slot, rotation, anchor);
+    }
+
+    /**
+     * Records that the last move has been undone.
+     */
+    void recordUndo() {
+        record(ReplayFormat.UNDO, 0, 0, 0);
+    }
+
+    /**
+     * Records that the last undone move has been redone.
+     */
+    void recordRedo() {
+        record(ReplayFormat.REDO, 0, 0, 0);
+    }
+
+    /**
+     * Closes the replay of the current game. Further actions are not recorded
+     * until the next game is started or continued.
+     * @return a Future that is done when the replay has been closed
+     */
+    Future<?> close() {
+        return writer.submit(this::closeOutput);
+    }
+
+    /**
+     * Closes the stream of the current replay. Runs on the writer thread.
+     */
+    private void closeOutput() {
+        if (output == null) {
+            return;
+        }
+        try {
+            output.close();
+        }
+        catch (IOException e) {
+            System.err.println("An error occurred while closing the replay file.");
+            e.printStackTrace();
+        }
+        output = null;
+    }
+
+    /**
+     * Appends a record with the engine's state after the action.
+     * The record is created at once and written by the writer thread.
+     * @param action the action
+     * @param slot the slot of the action
+     * @param rotation the rotation of the action
+     * @param anchor the anchor of the action
+     */
+    private void record(byte action, int slot, int rotation, int anchor) {
+        byte[] record = ByteBuffer.allocate(ReplayFormat.RECORD_SIZE)
+                .put((byte) (action | (engine.isGameOver() ? ReplayFormat.GAME_OVER_FLAG : 0)))
+                .put((byte) slot)
+                .put((byte) rotation)
+                .put((byte) anchor)
+                .putInt(engine.getScore())
+                .putLong(engine.getStateHash())
+                .array();
+        writer.submit(() -> write(record));
+    }
+
+    /**
+     * Writes and flushes given record. Runs on the writer thread.
+     * @param record the record
+     */
+    private void write(byte[] record) {
+        if (output == null) {
+            return;
+        }
+        try {
+            output.write(record);
+            output.flush();
+        }
+        catch (IOException e) {
+            System.err.println("An error occurred while writing the replay file.");
+            e.printStackTrace();
+            closeOutput();
+        }
+    }
+
+}
@@ -0,0 +1,92 @@
+package blockpuzzle;
+
+/**
+ * A ReplayResult describes the outcome of playing a replay with the
+ * ReplayPlayer: the final game state and whether it matched the recording.
+ */
+public class ReplayResult {
+    private final long seed;
+    private final int rulesVersion;
+    private final int actions;
+    private final int finalScore;
+    private final boolean gameOver;
+    // index of the first action whose outcome differs from the recording, -1 if none
+    private final int firstMismatch;
+
+    ReplayResult(long seed, int rulesVersion, int actions, int finalScore,
+                 boolean gameOver, int firstMismatch) {
+        this.seed = seed;
+        this.rulesVersion = rulesVersion;
+        this.actions = actions;
+        this.finalScore = finalScore;
+        this.gameOver = gameOver;
+        this.firstMismatch = firstMismatch;
+    }
+
+    /**
+     * Gets the seed of the replayed game.
+     * @return the seed
+     */
+    long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Gets the version of the rules the replay has been recorded with.
+     * @return the rulesVersion
+     */
+    int getRulesVersion() {
+        return rulesVersion;
+    }
+
+    /**
+     * Gets the number of actions that have been played.
+     * @return the actions
+     */
+    int getActions() {
+        return actions;
+    }
+
+    /**
+     * Gets the score after the last played action.
+     * @return the finalScore
+     */
+    int getFinalScore() {
+        return finalScore;
+    }
+
+    /**
+     * Checks if the game was over after the last played action.
+     * @return true if the game was over, false otherwise
+     */
+    boolean isGameOver() {
+        return gameOver;
+    }
+
+    /**
+     * Gets the index of the first action whose outcome (legality, score,
+     * game over state or state hash) differs from the recording.
+     * Playing stops at this action.
+     * @return the index, -1 if all actions matched
+     */
+    int getFirstMismatch() {
+        return firstMismatch;
+    }
+
+    /**
+     * Checks if all actions of the replay had the recorded outcome.
+     * @return true if no action differs, false otherwise
+     */
+    boolean isVerified() {
+        return firstMismatch == -1;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("seed %016x, rules %d, actions %d, score %d, %s, %s",
+                seed, rulesVersion, actions, finalScore,
+                gameOver ? "game over" : "running",
+                isVerified() ? "verified" : "MISMATCH at action " + firstMismatch);
+    }
+
+}
@@ -0,0 +1,35 @@
+package blockpuzzle;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A ReplayVisitor receives the games and actions of a ReplayArchive.
+ * The actions are passed as records inside the archive's mapped buffer, so
+ * visiting creates no objects per action. The buffer must not be modified
+ * and the record must not be used after visitAction() returns.
+ */
+public interface ReplayVisitor {
+
+    /**
+     * Called before the actions of a game are visited.
+     * @param game the index of the game in the archive
+     * @param seed the seed of the game
+     * @param rulesVersion the version of the rules the game has been recorded with
+     */
+    void startGame(int game, long seed, int rulesVersion);
+
+    /**
+     * Called for each action of the current game in the order of recording.
+     * @param records the buffer containing the record
+     * @param position the position of the record in the buffer, see ReplayFormat
+     */
+    void visitAction(ByteBuffer records, int position);
+
+    /**
+     * Called after all actions of a game have been visited.
+     * @param game the index of the game in the archive
+     */
+    default void endGame(int game) {
+    }
+
+}
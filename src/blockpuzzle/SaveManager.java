@@ -1,21 +1,52 @@
 package blockpuzzle;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static java.nio.file.StandardOpenOption.*;
 
 /**
  * A SaveManager manages the saving and loading of the current/saved game state.
+ *
+ * Saving snapshots the game state on the EDT and writes it on a background
+ * thread: the Savegame is written to a temporary file, forced to disk and then
+ * atomically moved over the Savegame's file, so a crash while saving never
+ * leaves a partial Savegame. The previous Savegame is kept as backup and
+ * loaded if the Savegame's file is missing or unreadable.
+ *
+ * Between two Savegames every move is appended to a WriteAheadJournal, and
+ * loading replays the journal on the Savegame. So a crash loses no moves.
  */
 public class SaveManager {
-    GameManager gameManager;
-    ScorePanel scorePanel;
-    GridPanel gridPanel;
-    BlockCombosPanel blockCombosPanel;
+    static final Path SAVEGAME_DIRECTORY = Paths.get("Savegames");
+    static final Path SAVEGAME_FILE = SAVEGAME_DIRECTORY.resolve("Savegame.save");
+    static final Path BACKUP_FILE = SAVEGAME_DIRECTORY.resolve("Savegame.save.bak");
+    private static final Path TEMPORARY_FILE = SAVEGAME_DIRECTORY.resolve("Savegame.save.tmp");
+    static final Path JOURNAL_FILE = SAVEGAME_DIRECTORY.resolve("Savegame.journal");
 
-    SaveManager(GameManager gm, ScorePanel sp, GridPanel gp, BlockCombosPanel bcp) {
+    GameManager gameManager;
+    GameEngine engine;
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Savegame writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final WriteAheadJournal journal = new WriteAheadJournal(JOURNAL_FILE, writer);
+    // moves made since the last Savegame minus undone moves, only used by the EDT
+    private int movesSinceSavegame = 0;
+    // the last written encoded Savegame, only used by the writer thread
+    private byte[] writtenSavegame = null;
+
+    SaveManager(GameManager gm, GameEngine ge) {
         gameManager = gm;
-        scorePanel = sp;
-        gridPanel = gp;
-        blockCombosPanel = bcp;
+        engine = ge;
     }
 
     /**
@@ -23,42 +54,112 @@ public class SaveManager {
      * @return the created Savegame
      */
     Savegame createSavegame() {
-        return new Savegame(gameManager, scorePanel, gridPanel, blockCombosPanel);
+        return new Savegame(engine);
+    }
+
+    /**
+     * Saves the current game state: a Savegame is created and encoded at once,
+     * it is written to the Savegame's file in the background and the journal
+     * is compacted, i.e. restarted after the Savegame.
+     * Must be called on the EDT.
+     * @return a Future that is done when the Savegame has been written
+     */
+    Future<?> saveGameState() {
+        byte[] savegame = SavegameCodec.encode(createSavegame());
+        movesSinceSavegame = 0;
+        return journal.startGeneration(engine.getStateHash(), () -> writeSavegameFile(savegame));
+    }
+
+    /**
+     * Records a change of the game state in the journal (see
+     * GameEngine.setChangeListener()). Restarts and undos of moves made before
+     * the last Savegame cannot be replayed on it, so they save the game instead.
+     * Must be called on the EDT.
+     * @param change the made move, GameEngine.UNDONE or GameEngine.RESTARTED
+     */
+    void recordChange(int change) {
+        if (change == GameEngine.RESTARTED
+                || (change == GameEngine.UNDONE && movesSinceSavegame == 0)) {
+            saveGameState();
+            return;
+        }
+        movesSinceSavegame += change == GameEngine.UNDONE ? -1 : 1;
+        journal.append(change, engine.getStateHash());
     }
 
     /**
-     * Saves the current game state by creating a Savegame Obbject and serializing it.
+     * Writes given encoded Savegame unless it equals the last written one.
+     * Runs on the writer thread.
+     * @param savegame the encoded Savegame
+     * @return true if the Savegame is on disk, false if writing failed
      */
-    void saveGameState() {
-        // create directory for Savegames (if it does not already exist)
-        File targetDirectory = new File("Savegames");
-        targetDirectory.mkdir();  // does nothing if directory already exists
-
-        // create file for Savegame
-        File file = new File("Savegames" + File.separator
-                + "Savegame.save");
+    private boolean writeSavegameFile(byte[] savegame) {
+        if (Arrays.equals(savegame, writtenSavegame)) {
+            return true;
+        }
         try {
-            file.createNewFile();
-        } catch (IOException e) {
-            System.err.println("An error occurred while creating the Savegame file.");
+            writeAtomically(savegame);
+            writtenSavegame = savegame;
+            return true;
+        }
+        catch (IOException e) {
+            System.err.println("An error occurred while writing the Savegame.");
             e.printStackTrace();
+            return false;
+        }
+    }
+
+    /**
+     * Replaces the Savegame's file by given encoded Savegame without ever
+     * leaving a partially written file behind. The replaced file becomes the backup.
+     * @param savegame the encoded Savegame
+     * @throws IOException if writing fails
+     */
+    private static void writeAtomically(byte[] savegame) throws IOException {
+        Files.createDirectories(SAVEGAME_DIRECTORY);
+        try (FileChannel channel = FileChannel.open(TEMPORARY_FILE,
+                CREATE, WRITE, TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(savegame);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
         }
 
-        // create Savegame instance
-        Savegame savegame = createSavegame();
+        if (Files.exists(SAVEGAME_FILE)) {
+            move(SAVEGAME_FILE, BACKUP_FILE);
+        }
+        move(TEMPORARY_FILE, SAVEGAME_FILE);
+        forceDirectory();
+    }
 
-        // serialize Savegame
+    /**
+     * Moves given file atomically, replacing the target. File systems that do
+     * not support atomic moves fall back to a plain move.
+     * @param source the file to be moved
+     * @param target the new path of the file
+     * @throws IOException if moving fails
+     */
+    private static void move(Path source, Path target) throws IOException {
         try {
-            FileOutputStream fileOutputStream = new FileOutputStream(file);
-            ObjectOutputStream objectOutputStream = new ObjectOutputStream(
-                    fileOutputStream);
-            objectOutputStream.writeObject(savegame);
-            objectOutputStream.flush();
-            objectOutputStream.close();
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
         }
-        catch (Exception e) {
-            System.err.println("An error occurred while serializing the Savegame.");
-            e.printStackTrace();
+        catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Forces the directory entries of the Savegames directory to disk, so the
+     * moves survive a power loss. Not every platform supports this, on those
+     * the moves are made durable by the file system on its own.
+     */
+    private static void forceDirectory() {
+        try (FileChannel directory = FileChannel.open(SAVEGAME_DIRECTORY, READ)) {
+            directory.force(true);
+        }
+        catch (IOException e) {
+            // directories cannot be opened on this platform
         }
     }
 
@@ -67,41 +168,83 @@ public class SaveManager {
      * @param savegame the Savegame representing the game state to be restored
      */
     void restoreGameState(Savegame savegame) {
-        gameManager.restoreGameManager(savegame);
-        scorePanel.restorePanel(savegame);
-        gridPanel.restorePanel(savegame);
-        blockCombosPanel.restorePanel(savegame);
+        engine.restore(savegame);
+        gameManager.resetPanels();
     }
 
     /**
-     * Loads a previously saved Savegame by deserializing the content of the Savegame's file.
-     * @return the loaded Savegame if deserialization successful, null otherwise
+     * Loads a previously saved Savegame by decoding the content of the Savegame's
+     * file. If it is missing or cannot be read, the backup is loaded instead.
+     * The moves of the journal are replayed on the loaded Savegame.
+     * @return the loaded Savegame if decoding successful, null otherwise
      */
     Savegame loadSavegame() {
-        Savegame loadedSavegame = null;
+        Savegame loadedSavegame = loadSavegame(SAVEGAME_FILE);
+        if (loadedSavegame == null) {
+            loadedSavegame = loadSavegame(BACKUP_FILE);
+        }
+        if (loadedSavegame != null) {
+            loadedSavegame = WriteAheadJournal.recover(loadedSavegame, JOURNAL_FILE);
+        }
+        return loadedSavegame;
+    }
 
-        File savegameFile = new File(
-                "Savegames" + File.separator + "Savegame.save");
+    /**
+     * Loads a Savegame from given file.
+     * @param savegameFile the file
+     * @return the loaded Savegame if decoding successful, null otherwise
+     */
+    private static Savegame loadSavegame(Path savegameFile) {
+        Savegame loadedSavegame = null;
 
-        if (!savegameFile.exists()) {
+        if (!Files.exists(savegameFile)) {
             // no savegame file found -> abort loading
             return loadedSavegame;
         }
 
-        try {
-            FileInputStream fileInputStream
-                    = new FileInputStream(savegameFile.getPath());
-            ObjectInputStream objectInputStream = new ObjectInputStream(fileInputStream);
-            loadedSavegame = (Savegame) objectInputStream.readObject();
-            objectInputStream.close();
+        try (InputStream inputStream = Files.newInputStream(savegameFile)) {
+            loadedSavegame = readSavegame(inputStream);
         }
         catch (Exception e) {
-            System.err.println("An error occurred while deserializing Savegame file.");
+            System.err.println("An error occurred while reading the Savegame file "
+                    + savegameFile + ".");
             e.printStackTrace();
         }
 
         return loadedSavegame;
     }
 
+    /**
+     * Writes given Savegame in the format of the SavegameCodec to given stream.
+     * @param savegame the Savegame to be written
+     * @param outputStream the stream the Savegame is written to, it is not closed
+     * @throws IOException if writing fails
+     */
+    static void writeSavegame(Savegame savegame, OutputStream outputStream)
+            throws IOException {
+        outputStream.write(SavegameCodec.encode(savegame));
+        outputStream.flush();
+    }
+
+    /**
+     * Reads a Savegame from given stream. Savegames in the format of the
+     * SavegameCodec and Savegames serialized by older versions of the game
+     * (Java serialization) are supported.
+     * @param inputStream the stream the Savegame is read from, it is not closed
+     * @return the read Savegame
+     * @throws IOException if reading fails or the stream contains no valid Savegame
+     * @throws ClassNotFoundException if a serialized Savegame contains an unknown class
+     */
+    static Savegame readSavegame(InputStream inputStream)
+            throws IOException, ClassNotFoundException {
+        byte[] bytes = inputStream.readAllBytes();
+        if (bytes.length >= 2 && (bytes[0] & 0xFF) == 0xAC && (bytes[1] & 0xFF) == 0xED) {
+            // stream magic of Java serialization
+            ObjectInputStream objectInputStream =
+                    new ObjectInputStream(new ByteArrayInputStream(bytes));
+            return (Savegame) objectInputStream.readObject();
+        }
+        return SavegameCodec.decode(ByteBuffer.wrap(bytes));
+    }
 
 }
@@ -1,11 +1,18 @@
 package blockpuzzle;
 
+import java.io.ObjectStreamException;
 import java.io.Serial;
 import java.io.Serializable;
 
 /**
  * A Savegame instance describes the state of the last saved
  * game including the best score reached in any game so far.
+ *
+ * Savegames are stored in the binary format of the SavegameCodec.
+ * Savegames written with Java serialization by older versions of the
+ * game can still be read. Those written before games had seeds contain no
+ * seed; they continue with a new seed and a new sequence of BlockCombos
+ * (see readResolve()).
  */
 public class Savegame implements Serializable {
     @Serial
@@ -25,25 +32,107 @@ public class Savegame implements Serializable {
     private BlockComboSave savedCombo;
     private final int remainingRoundsForSavedCombo;
 
+    // the game's seed and the number of BlockCombos created with it so far
+    private final long seed;
+    private final long generatedCombos;
 
-    Savegame(GameManager gameManager, ScorePanel scorePanel,
-             GridPanel gridPanel, BlockCombosPanel blockCombosPanel) {
-        // from GameManager
-        rotations = gameManager.getRotations();
-        nextRotation = gameManager.getNextRotation();
-        gameOver = gameManager.isGameOver();
 
-        // from ScorePanel
-        highScore = scorePanel.getHighScore();
-        score = scorePanel.getScore();
+    Savegame(GameEngine engine) {
+        rotations = engine.getRotations();
+        nextRotation = engine.getNextRotation();
+        gameOver = engine.isGameOver();
 
-        // from GridPanel
-        grid = createGridArray(gridPanel.getGrid());
+        highScore = engine.getHighScore();
+        score = engine.getScore();
 
-        // from BlockCombosPanel
-        setBlockComboSaves(blockCombosPanel);
-        remainingRoundsForSavedCombo
-                = blockCombosPanel.getRemainingRoundsForSavedCombo();
+        grid = createGridArray(engine.getGrid());
+
+        setBlockComboSaves(engine);
+        remainingRoundsForSavedCombo = engine.getRemainingRoundsForSavedCombo();
+
+        seed = engine.getSeed();
+        generatedCombos = engine.getGeneratedCombos();
+    }
+
+    /**
+     * Creates a Savegame from its decoded values, see SavegameCodec.
+     * @param rotations the number of rotations
+     * @param nextRotation nextRotation
+     * @param gameOver specifies if the game is over
+     * @param highScore the highScore
+     * @param score the score
+     * @param gridLow the non-empty cells with indices 0..63
+     * @param gridHigh the non-empty cells with indices 64..80
+     * @param openBlockCombos the open BlockCombos (null for an empty slot)
+     * @param savedBlockCombo the saved BlockCombo (null if none)
+     * @param remainingRounds the remaining rounds for the saved BlockCombo
+     * @param seed the seed of the game
+     * @param generatedCombos the number of BlockCombos handed out so far
+     */
+    Savegame(int rotations, int nextRotation, boolean gameOver, int highScore, int score,
+             long gridLow, long gridHigh, BlockCombo[] openBlockCombos,
+             BlockCombo savedBlockCombo, int remainingRounds, long seed, long generatedCombos) {
+        this.rotations = rotations;
+        this.nextRotation = nextRotation;
+        this.gameOver = gameOver;
+
+        this.highScore = highScore;
+        this.score = score;
+
+        grid = new boolean[Grid.SIZE][Grid.SIZE];
+        for (int index = 0; index < Grid.SIZE * Grid.SIZE; index++) {
+            long bit = index < 64 ? gridLow >>> index : gridHigh >>> (index - 64);
+            grid[index / Grid.SIZE][index % Grid.SIZE] = (bit & 1) != 0;
+        }
+
+        for (int i = 0; i < openCombos.length; i++) {
+            openCombos[i] = new BlockComboSave(openBlockCombos[i]);
+        }
+        savedCombo = new BlockComboSave(savedBlockCombo);
+        remainingRoundsForSavedCombo = remainingRounds;
+
+        this.seed = seed;
+        this.generatedCombos = generatedCombos;
+    }
+
+    /**
+     * Creates a copy of given Savegame with another seed.
+     * @param savegame the Savegame to be copied
+     * @param seed the seed of the game
+     * @param generatedCombos the number of BlockCombos handed out so far
+     */
+    private Savegame(Savegame savegame, long seed, long generatedCombos) {
+        rotations = savegame.rotations;
+        nextRotation = savegame.nextRotation;
+        gameOver = savegame.gameOver;
+
+        highScore = savegame.highScore;
+        score = savegame.score;
+
+        grid = savegame.grid;
+
+        System.arraycopy(savegame.openCombos, 0, openCombos, 0, openCombos.length);
+        savedCombo = savegame.savedCombo;
+        remainingRoundsForSavedCombo = savegame.remainingRoundsForSavedCombo;
+
+        this.seed = seed;
+        this.generatedCombos = generatedCombos;
+    }
+
+    /**
+     * Replaces a deserialized Savegame written before games had seeds. Its
+     * stream contains no seed and no generatedCombos, so both are 0, and
+     * every such game would continue with the BlockCombos of seed 0.
+     * It gets a new seed instead.
+     * @return the Savegame to be used
+     * @throws ObjectStreamException never
+     */
+    @Serial
+    private Object readResolve() throws ObjectStreamException {
+        if (seed == 0 && generatedCombos == 0) {
+            return new Savegame(this, GameEngine.createSeed(), 0);
+        }
+        return this;
     }
 
 
@@ -67,16 +156,26 @@ public class Savegame implements Serializable {
 
     /**
      * Sets firstCombo, secondCombo, thirdCombo and savedCombo depending on the
-     * state of the given BlockCombosPanel.
-     * @param blockCombosPanel the BlockCombosPanel which state shall be saved
+     * state of the given GameEngine. The BlockCombos are saved in their original
+     * formation without changing their rotation, since Savegames are also
+     * created while the game is played (see AutosaveService).
+     * @param engine the GameEngine which state shall be saved
      */
-    void setBlockComboSaves(BlockCombosPanel blockCombosPanel) {
-        SingleContainer<BlockCombo>[] openBlockCombos
-                = blockCombosPanel.getOpenBlockCombos();
-        openCombos[0] = new BlockComboSave(openBlockCombos[0]);
-        openCombos[1] = new BlockComboSave(openBlockCombos[1]);
-        openCombos[2] = new BlockComboSave(openBlockCombos[2]);
-        savedCombo = new BlockComboSave(blockCombosPanel.getSavedBlockCombo());
+    void setBlockComboSaves(GameEngine engine) {
+        SingleContainer<BlockCombo>[] openBlockCombos = engine.getOpenBlockCombos();
+        openCombos[0] = new BlockComboSave(getContent(openBlockCombos[0]));
+        openCombos[1] = new BlockComboSave(getContent(openBlockCombos[1]));
+        openCombos[2] = new BlockComboSave(getContent(openBlockCombos[2]));
+        savedCombo = new BlockComboSave(getContent(engine.getSavedBlockCombo()));
+    }
+
+    /**
+     * Gets the content of given SingleContainer.
+     * @param container the SingleContainer
+     * @return the BlockCombo, null if the container is empty
+     */
+    private static BlockCombo getContent(SingleContainer<BlockCombo> container) {
+        return container.isEmpty() ? null : container.getContent();
     }
 
 
@@ -120,4 +219,12 @@ public class Savegame implements Serializable {
         return remainingRoundsForSavedCombo;
     }
 
+    long getSeed() {
+        return seed;
+    }
+
+    long getGeneratedCombos() {
+        return generatedCombos;
+    }
+
 }
@@ -0,0 +1,170 @@
+package blockpuzzle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+
+/**
+ * The SavegameCodec converts Savegames to and from their compact binary format
+ * (SIZE bytes, big-endian):
+ *
+ * magic (int), version (short), flags (byte: bit 0 = game over),
+ * rotations (int), nextRotation (byte), remaining rounds for the saved
+ * BlockCombo (byte), highScore (int), score (int),
+ * grid (81 bits: cells 0..63 as long, cells 64..80 in 3 bytes),
+ * open BlockCombos and saved BlockCombo (one byte each: shape id << 2 | original
+ * rotation, EMPTY_SLOT for an empty slot), seed (long), generatedCombos (long),
+ * CRC32 of all previous bytes (int).
+ *
+ * Newer versions of the format must be appended as new cases of decode(),
+ * so every version that has been written can still be read.
+ */
+public final class SavegameCodec {
+    static final int MAGIC = 0x42505356;  // "BPSV"
+    static final short VERSION = 1;
+    static final int SIZE = 4 + 2 + 1 + 4 + 1 + 1 + 4 + 4 + 8 + 3
+            + GameEngine.SAVED_SLOT + 1 + 8 + 8 + 4;
+
+    private static final int GAME_OVER_FLAG = 1;
+    private static final int EMPTY_SLOT = 0xFF;
+
+    private SavegameCodec() {
+    }
+
+    /**
+     * Encodes given Savegame.
+     * @param savegame the Savegame
+     * @return the encoded Savegame (SIZE bytes)
+     */
+    static byte[] encode(Savegame savegame) {
+        ByteBuffer buffer = ByteBuffer.allocate(SIZE);
+        buffer.putInt(MAGIC);
+        buffer.putShort(VERSION);
+        buffer.put((byte) (savegame.isGameOver() ? GAME_OVER_FLAG : 0));
+        buffer.putInt(savegame.getRotations());
+        buffer.put((byte) savegame.getNextRotation());
+        buffer.put((byte) savegame.getRemainingRoundsForSavedCombo());
+        buffer.putInt(savegame.getHighScore());
+        buffer.putInt(savegame.getScore());
+
+        // pack the grid into 81 bits
+        long gridLow = 0;
+        long gridHigh = 0;
+        boolean[][] grid = savegame.getGrid();
+        for (int index = 0; index < Grid.SIZE * Grid.SIZE; index++) {
+            if (grid[index / Grid.SIZE][index % Grid.SIZE]) {
+                if (index < 64) {
+                    gridLow |= 1L << index;
+                }
+                else {
+                    gridHigh |= 1L << (index - 64);
+                }
+            }
+        }
+        buffer.putLong(gridLow);
+        buffer.put((byte) (gridHigh >>> 16));
+        buffer.putShort((short) gridHigh);
+
+        for (BlockComboSave combo : savegame.getOpenCombos()) {
+            buffer.put(encodeCombo(combo));
+        }
+        buffer.put(encodeCombo(savegame.getSavedCombo()));
+        buffer.putLong(savegame.getSeed());
+        buffer.putLong(savegame.getGeneratedCombos());
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putInt((int) crc.getValue());
+        return buffer.array();
+    }
+
+    /**
+     * Decodes a Savegame.
+     * @param buffer the buffer containing the encoded Savegame at its position
+     * @return the decoded Savegame
+     * @throws IOException if the buffer does not contain a valid Savegame
+     */
+    static Savegame decode(ByteBuffer buffer) throws IOException {
+        if (buffer.remaining() < 6 || buffer.getInt(buffer.position()) != MAGIC) {
+            throw new IOException("The data is not a Savegame.");
+        }
+        short version = buffer.getShort(buffer.position() + 4);
+        return switch (version) {
+            case 1 -> decodeVersion1(buffer);
+            default -> throw new IOException("Savegame version " + version
+                    + " is not supported.");
+        };
+    }
+
+    /**
+     * Decodes a Savegame of version 1.
+     * @param buffer the buffer containing the encoded Savegame at its position
+     * @return the decoded Savegame
+     * @throws IOException if the Savegame is incomplete or corrupt
+     */
+    private static Savegame decodeVersion1(ByteBuffer buffer) throws IOException {
+        int start = buffer.position();
+        if (buffer.remaining() < SIZE) {
+            throw new IOException("The Savegame is incomplete.");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.slice(start, SIZE - 4));
+        if ((int) crc.getValue() != buffer.getInt(start + SIZE - 4)) {
+            throw new IOException("The Savegame is corrupt.");
+        }
+
+        buffer.position(start + 6);  // skip magic and version
+        boolean gameOver = (buffer.get() & GAME_OVER_FLAG) != 0;
+        int rotations = buffer.getInt();
+        int nextRotation = buffer.get();
+        int remainingRounds = buffer.get();
+        int highScore = buffer.getInt();
+        int score = buffer.getInt();
+        long gridLow = buffer.getLong();
+        long gridHigh = (buffer.get() & 0xFFL) << 16 | (buffer.getShort() & 0xFFFFL);
+
+        BlockCombo[] openCombos = new BlockCombo[GameEngine.NUMBER_OF_OPEN_SLOTS];
+        for (int i = 0; i < openCombos.length; i++) {
+            openCombos[i] = decodeCombo(buffer.get() & 0xFF);
+        }
+        BlockCombo savedCombo = decodeCombo(buffer.get() & 0xFF);
+        long seed = buffer.getLong();
+        long generatedCombos = buffer.getLong();
+        buffer.getInt();  // CRC
+
+        return new Savegame(rotations, nextRotation, gameOver, highScore, score,
+                gridLow, gridHigh, openCombos, savedCombo, remainingRounds,
+                seed, generatedCombos);
+    }
+
+    /**
+     * Encodes the BlockCombo of given BlockComboSave.
+     * @param combo the BlockComboSave
+     * @return shape id << 2 | original rotation, EMPTY_SLOT if it represents no BlockCombo
+     */
+    private static byte encodeCombo(BlockComboSave combo) {
+        if (!combo.representsBlockCombo()) {
+            return (byte) EMPTY_SLOT;
+        }
+        BlockCombo blockCombo = combo.restoreBlockCombo();
+        return (byte) (blockCombo.getShape().getId() << 2 | blockCombo.getOriginalRotation());
+    }
+
+    /**
+     * Decodes a BlockCombo.
+     * @param code shape id << 2 | original rotation, or EMPTY_SLOT
+     * @return the BlockCombo, null for EMPTY_SLOT
+     * @throws IOException if the shape id does not exist
+     */
+    private static BlockCombo decodeCombo(int code) throws IOException {
+        if (code == EMPTY_SLOT) {
+            return null;
+        }
+        int shapeId = code >> 2;
+        if (shapeId >= ComboShapeCatalog.getNumberOfShapes()) {
+            throw new IOException("The Savegame contains an unknown BlockCombo.");
+        }
+        return new BlockCombo(ComboShapeCatalog.getShape(shapeId), code & 0b11);
+    }
+
+}
@@ -3,62 +3,18 @@ package blockpuzzle;
 import javax.swing.*;
 import java.awt.*;
 
+/**
+ * A ScorePanel is an extended JPanel that draws the scores of the GameEngine.
+ */
 public class ScorePanel extends JPanel {
-    private int highScore = 0;
-    private int score = 0;
-    private int recentlyAddedScore = 0;
+    private static final Color STANDARD_COLOR = Color.GRAY;
+    private static final Font HIGH_SCORE_FONT = new Font("Monospaced", Font.PLAIN, 14);
+    private static final Font SCORE_FONT = new Font("Monospaced", Font.BOLD, 20);
 
-    /**
-     * Restores the ScorePanel based on the game state represented by given savegame.
-     * @param savegame the Savegame representing the game state to be restored
-     */
-    void restorePanel(Savegame savegame) {
-        highScore = savegame.getHighScore();
-        score = savegame.getScore();
-    }
-
-    /**
-     * Gets the highScore.
-     * @return the highScore
-     */
-    int getHighScore() {
-        return highScore;
-    }
-
-    /**
-     * Gets the current score.
-     * @return the score
-     */
-    int getScore() {
-        return score;
-    }
-
-    /**
-     * Resets the score (not the highScore).
-     */
-    void reset() {
-        score = 0;
-    }
-
-    /**
-     * Increases the score by given number.
-     * If score is afterwards larger than highScore, highScore is set to score.
-     * @param number the number added to the score
-     */
-    void increaseScoreBy(int number) {
-        score += number;
-        recentlyAddedScore = number;
+    private final GameEngine engine;
 
-        if (score > highScore) {
-            highScore = score;
-        }
-    }
-
-    /**
-     * Resets the recentlyAddedScore to 0.
-     */
-    void resetRecentlyAddedScore() {
-        recentlyAddedScore = 0;
+    ScorePanel(GameEngine gameEngine) {
+        engine = gameEngine;
     }
 
     /**
@@ -66,15 +22,17 @@ public class ScorePanel extends JPanel {
      * @param g the Graphics object given by paintComponent()
      */
     private void drawScores(Graphics g) {
-        Color standardColor = Color.GRAY;
-        g.setColor(standardColor);
-        g.setFont(new Font("Monospaced", Font.PLAIN, 14));
+        g.setColor(STANDARD_COLOR);
+        g.setFont(HIGH_SCORE_FONT);
+
+        int score = engine.getScore();
+        int recentlyAddedScore = engine.getRecentlyAddedScore();
 
         // draw highScore
-        g.drawString("Best: " + highScore, 15, 24);
+        g.drawString("Best: " + engine.getHighScore(), 15, 24);
 
         // draw current score
-        g.setFont(new Font("Monospaced", Font.BOLD, 20));
+        g.setFont(SCORE_FONT);
         if (recentlyAddedScore == 0) {
             g.drawString("Score: " + score, 14, 48);
         }
@@ -0,0 +1,103 @@
+package blockpuzzle;
+
+import java.util.Arrays;
+
+/**
+ * A SimulationReport describes the throughput and the score distribution
+ * of a batch of games played by the BatchSimulator.
+ */
+public class SimulationReport {
+    private final long moves;
+    private final long elapsedNanos;
+    // final scores of all games in ascending order
+    private final int[] sortedScores;
+
+    SimulationReport(int[] scores, long moves, long elapsedNanos) {
+        this.moves = moves;
+        this.elapsedNanos = elapsedNanos;
+        sortedScores = scores.clone();
+        Arrays.sort(sortedScores);
+    }
+
+    /**
+     * Gets the number of played games.
+     * @return the number of games
+     */
+    int getGames() {
+        return sortedScores.length;
+    }
+
+    /**
+     * Gets the number of moves made in all games.
+     * @return the moves
+     */
+    long getMoves() {
+        return moves;
+    }
+
+    /**
+     * Gets the wall clock time needed to play all games.
+     * @return the elapsed time in nanoseconds
+     */
+    long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    /**
+     * Gets the number of games played per second.
+     * @return the games per second
+     */
+    double getGamesPerSecond() {
+        return sortedScores.length * 1e9 / Math.max(1, elapsedNanos);
+    }
+
+    /**
+     * Gets the number of moves made per second.
+     * @return the moves per second
+     */
+    double getMovesPerSecond() {
+        return moves * 1e9 / Math.max(1, elapsedNanos);
+    }
+
+    /**
+     * Gets the mean final score.
+     * @return the mean score, 0 if no games have been played
+     */
+    double getMeanScore() {
+        if (sortedScores.length == 0) {
+            return 0;
+        }
+        long sum = 0;
+        for (int score : sortedScores) {
+            sum += score;
+        }
+        return (double) sum / sortedScores.length;
+    }
+
+    /**
+     * Gets the final score that is not exceeded by the given share of games
+     * (nearest-rank method).
+     * @param percentile the percentile (0..100)
+     * @return the score at the percentile, 0 if no games have been played
+     */
+    int getScorePercentile(double percentile) {
+        if (sortedScores.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percentile / 100 * sortedScores.length);
+        return sortedScores[Math.min(sortedScores.length - 1, Math.max(0, rank - 1))];
+    }
+
+    @Override
+    public String toString() {
+        return String.format(
+                "games: %d, moves: %d, time: %.3f s%n"
+                        + "throughput: %.0f games/s, %.0f moves/s%n"
+                        + "score: mean %.1f, min %d, p50 %d, p90 %d, p99 %d, max %d",
+                getGames(), moves, elapsedNanos / 1e9,
+                getGamesPerSecond(), getMovesPerSecond(),
+                getMeanScore(), getScorePercentile(0), getScorePercentile(50),
+                getScorePercentile(90), getScorePercentile(99), getScorePercentile(100));
+    }
+
+}
@@ -0,0 +1,258 @@
+package blockpuzzle;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.function.BooleanSupplier;
+
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * A WriteAheadJournal appends every move to a file next to the Savegame,
+ * so a crashed game can be recovered up to its last move: the Savegame is
+ * loaded and the moves of the journal are replayed on it (see recover()).
+ *
+ * Format (big-endian):
+ * header: magic (int), version (short), reserved (short),
+ *         state hash of the Savegame the journal continues (long)
+ * records: the move (see MoveGenerator) or GameEngine.UNDONE (int),
+ *          the lower 32 bits of the state hash after the move (int)
+ *
+ * Moves are appended on the EDT and written by the SaveManager's writer
+ * thread. All records appended while the writer is busy are written and
+ * forced to disk together (group commit), so fast play costs one sync per
+ * group instead of one per move. Writing a new Savegame compacts the journal:
+ * it is truncated and continues the new Savegame (see startGeneration()).
+ */
+public class WriteAheadJournal {
+    static final int MAGIC = 0x4250574A;  // "BPWJ"
+    static final short VERSION = 1;
+    static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 8;
+
+    private final Path file;
+    private final ExecutorService writer;
+
+    // records of the current generation, only used by the EDT
+    private Generation current = null;
+
+    // the open journal file, only used by the writer thread
+    private FileChannel channel = null;
+
+    /**
+     * The records of the journal since a Savegame. Appended on the EDT,
+     * drained by the writer thread.
+     */
+    private static final class Generation {
+        private final long baseHash;
+        private byte[] records = new byte[64 * RECORD_SIZE];
+        private int size = 0;
+        private boolean flushScheduled = false;
+
+        private Generation(long baseHash) {
+            this.baseHash = baseHash;
+        }
+    }
+
+    /**
+     * Creates a WriteAheadJournal.
+     * @param journalFile the journal file
+     * @param writerThread the executor writing the journal and the Savegames
+     */
+    WriteAheadJournal(Path journalFile, ExecutorService writerThread) {
+        file = journalFile;
+        writer = writerThread;
+    }
+
+    /**
+     * Starts a new generation of the journal continuing a new Savegame.
+     * The writer thread first writes the Savegame; if that succeeds, the
+     * journal file is truncated, otherwise the old journal is continued.
+     * Must be called on the EDT.
+     * @param baseHash the state hash of the new Savegame
+     * @param savegameWriter writes the Savegame, returns true if it is on disk
+     * @return a Future that is done when the Savegame and the journal have been written
+     */
+    Future<?> startGeneration(long baseHash, BooleanSupplier savegameWriter) {
+        Generation generation = new Generation(baseHash);
+        current = generation;
+        return writer.submit(() -> {
+            if (savegameWriter.getAsBoolean()) {
+                reset(generation);
+            }
+        });
+    }
+
+    /**
+     * Appends a record to the current generation. It is written with the next
+     * group of records. Must be called on the EDT after startGeneration().
+     * @param change the move (see MoveGenerator) or GameEngine.UNDONE
+     * @param stateHash the state hash after the change
+     */
+    void append(int change, long stateHash) {
+        Generation generation = current;
+        boolean scheduleFlush;
+        synchronized (generation) {
+            if (generation.size == generation.records.length) {
+                generation.records = Arrays.copyOf(generation.records, 2 * generation.size);
+            }
+            ByteBuffer.wrap(generation.records, generation.size, RECORD_SIZE)
+                    .putInt(change).putInt((int) stateHash);
+            generation.size += RECORD_SIZE;
+            scheduleFlush = !generation.flushScheduled;
+            generation.flushScheduled = true;
+        }
+        if (scheduleFlush) {
+            writer.submit(() -> flush(generation));
+        }
+    }
+
+    /**
+     * Truncates the journal file and writes the header of given generation.
+     * Runs on the writer thread.
+     * @param generation the new generation
+     */
+    private void reset(Generation generation) {
+        try {
+            if (channel == null) {
+                Files.createDirectories(file.getParent());
+                channel = FileChannel.open(file, CREATE, WRITE);
+            }
+            channel.truncate(0);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putShort(VERSION).putShort((short) 0)
+                    .putLong(generation.baseHash).flip();
+            write(header);
+            channel.force(false);
+        }
+        catch (IOException e) {
+            System.err.println("An error occurred while writing the journal.");
+            e.printStackTrace();
+            close();
+        }
+    }
+
+    /**
+     * Writes and forces all records of given generation that have been
+     * appended so far. Runs on the writer thread.
+     * @param generation the generation
+     */
+    private void flush(Generation generation) {
+        byte[] records;
+        synchronized (generation) {
+            records = Arrays.copyOf(generation.records, generation.size);
+            generation.size = 0;
+            generation.flushScheduled = false;
+        }
+        if (channel == null) {
+            // the journal could not be opened, the moves are saved with the next Savegame
+            return;
+        }
+        try {
+            write(ByteBuffer.wrap(records));
+            channel.force(false);
+        }
+        catch (IOException e) {
+            System.err.println("An error occurred while writing the journal.");
+            e.printStackTrace();
+            close();
+        }
+    }
+
+    /**
+     * Writes given bytes at the end of the journal file.
+     * @param buffer the bytes
+     * @throws IOException if writing fails
+     */
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, channel.size());
+        }
+    }
+
+    /**
+     * Closes the journal file. The journal is started again with the next
+     * generation. Runs on the writer thread.
+     */
+    private void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            }
+            catch (IOException e) {
+                // nothing to be done
+            }
+        }
+        channel = null;
+    }
+
+    /**
+     * Recovers the game state of given Savegame and given journal file:
+     * the journal's moves are replayed on the Savegame until the end of the
+     * journal, an incomplete record or the first move whose outcome differs.
+     * The journal is ignored if it does not continue the Savegame.
+     * @param savegame the loaded Savegame
+     * @param journalFile the journal file
+     * @return the recovered Savegame, the given one if the journal has no moves
+     *         for it
+     */
+    static Savegame recover(Savegame savegame, Path journalFile) {
+        byte[] journal;
+        try {
+            if (!Files.exists(journalFile)) {
+                return savegame;
+            }
+            journal = Files.readAllBytes(journalFile);
+        }
+        catch (IOException e) {
+            System.err.println("An error occurred while reading the journal.");
+            e.printStackTrace();
+            return savegame;
+        }
+
+        GameEngine engine = new GameEngine(0);
+        engine.restore(savegame);
+        ByteBuffer buffer = ByteBuffer.wrap(journal);
+        if (journal.length < HEADER_SIZE || buffer.getInt() != MAGIC
+                || buffer.getShort() != VERSION || buffer.getShort() != 0
+                || buffer.getLong() != engine.getStateHash()) {
+            return savegame;
+        }
+
+        int replayedMoves = 0;
+        while (buffer.remaining() >= RECORD_SIZE) {
+            int change = buffer.getInt();
+            int stateHash = buffer.getInt();
+            boolean legal;
+            if (change == GameEngine.UNDONE) {
+                legal = engine.undo();
+            }
+            else {
+                legal = change >= 0 && MoveGenerator.getSlot(change) <= GameEngine.SAVED_SLOT
+                        && MoveGenerator.makeMove(engine, change);
+            }
+            if (!legal || (int) engine.getStateHash() != stateHash) {
+                if (legal) {
+                    // keep the state before the differing move
+                    if (change == GameEngine.UNDONE) {
+                        engine.redo();
+                    }
+                    else {
+                        engine.undo();
+                    }
+                }
+                System.err.println("The journal does not match the Savegame after "
+                        + replayedMoves + " moves.");
+                break;
+            }
+            replayedMoves += 1;
+        }
+        return replayedMoves == 0 ? savegame : new Savegame(engine);
+    }
+
+}
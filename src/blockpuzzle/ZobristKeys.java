@@ -0,0 +1,135 @@
+package blockpuzzle;
+
+import java.util.SplittableRandom;
+
+/**
+ * ZobristKeys contains the random 64-bit keys of the Zobrist hash of a game
+ * state. The hash of a state is the XOR of the keys of its parts:
+ * each non-empty cell, each BlockCombo in its slot (with its original formation),
+ * the saved BlockCombo's remaining rounds and the rotation counters.
+ * So a change of one part updates the hash with one or two XORs.
+ *
+ * The keys are created from a fixed seed, so the hash of a game state is
+ * the same in every run of the game and can be stored.
+ */
+public final class ZobristKeys {
+    private static final int numberOfCells = Grid.SIZE * Grid.SIZE;
+    // the cells are hashed in groups of 8 (one byte of the bitboard)
+    private static final int numberOfCellBytes = (numberOfCells + 7) / 8;
+
+    // cellByteKeys[b][v] = XOR of the keys of the cells set in byte value v of byte b
+    private static final long[][] cellByteKeys = new long[numberOfCellBytes][256];
+    // comboKeys[slot][shape id][orientation]
+    private static final long[][][] comboKeys = new long[GameEngine.SAVED_SLOT + 1]
+            [ComboShapeCatalog.getNumberOfShapes()][ComboShape.NUMBER_OF_ROTATIONS];
+    private static final long remainingRoundsSeed;
+    private static final long rotationsSeed;
+    static final long GAME_OVER_KEY;
+
+    static {
+        SplittableRandom random = new SplittableRandom(0x5EEDB10CL);
+
+        for (int b = 0; b < numberOfCellBytes; b++) {
+            long[] cellKeys = new long[8];
+            for (int bit = 0; bit < 8; bit++) {
+                // cells outside the Grid never get set, their keys are unused
+                cellKeys[bit] = random.nextLong();
+            }
+            for (int value = 1; value < 256; value++) {
+                int lowestBit = Integer.numberOfTrailingZeros(value);
+                cellByteKeys[b][value] = cellByteKeys[b][value & (value - 1)]
+                        ^ cellKeys[lowestBit];
+            }
+        }
+
+        for (long[][] slotKeys : comboKeys) {
+            for (long[] shapeKeys : slotKeys) {
+                for (int orientation = 0; orientation < shapeKeys.length; orientation++) {
+                    shapeKeys[orientation] = random.nextLong();
+                }
+            }
+        }
+
+        remainingRoundsSeed = random.nextLong();
+        rotationsSeed = random.nextLong();
+        GAME_OVER_KEY = random.nextLong();
+    }
+
+    private ZobristKeys() {
+    }
+
+    /**
+     * Gets the hash of the given cells.
+     * Since the hash is linear, the hash of changed cells (old XOR new bitboard)
+     * updates the hash of the old bitboard to the hash of the new one.
+     * @param low the cells with indices 0..63
+     * @param high the cells with indices 64..80
+     * @return the XOR of the keys of all given cells
+     */
+    static long hashCells(long low, long high) {
+        long hash = 0;
+        for (int b = 0; low != 0; b++, low >>>= 8) {
+            hash ^= cellByteKeys[b][(int) low & 0xFF];
+        }
+        for (int b = 8; high != 0; b++, high >>>= 8) {
+            hash ^= cellByteKeys[b][(int) high & 0xFF];
+        }
+        return hash;
+    }
+
+    /**
+     * Gets the key of a BlockCombo in a slot. Original formations that look
+     * the same (rotations that differ by the shape's symmetry order) have the same key.
+     * @param slot the slot of the BlockCombo
+     * @param shape the ComboShape of the BlockCombo
+     * @param originalRotation the rotation of the BlockCombo's original formation
+     * @return the key
+     */
+    static long getComboKey(int slot, ComboShape shape, int originalRotation) {
+        return comboKeys[slot][shape.getId()][originalRotation % shape.getSymmetryOrder()];
+    }
+
+    /**
+     * Gets the key of a BlockCombo in a slot.
+     * @param slot the slot of the BlockCombo
+     * @param combo the BlockCombo
+     * @return the key
+     */
+    static long getComboKey(int slot, BlockCombo combo) {
+        return getComboKey(slot, combo.getShape(), combo.getOriginalRotation());
+    }
+
+    /**
+     * Gets the key of the number of rounds the saved BlockCombo can still be kept.
+     * @param remainingRounds the remaining rounds
+     * @return the key
+     */
+    static long getRemainingRoundsKey(int remainingRounds) {
+        return mix(remainingRoundsSeed + remainingRounds);
+    }
+
+    /**
+     * Gets the key of the rotation counters.
+     * @param rotations the number of available rotations
+     * @param nextRotation the progress towards the next rotation
+     * @return the key
+     */
+    static long getRotationsKey(int rotations, int nextRotation) {
+        return mix(rotationsSeed + ((long) rotations << 32 | nextRotation));
+    }
+
+    /**
+     * Mixes the bits of given value (finalizer of MurmurHash3).
+     * @param value the value
+     * @return the mixed value
+     */
+    private static long mix(long value) {
+        value ^= value >>> 33;
+        value *= 0xFF51AFD7ED558CCDL;
+        value ^= value >>> 33;
+        value *= 0xC4CEB9FE1A85EC53L;
+        value ^= value >>> 33;
+        return value;
+    }
+
+}